@@ -1,6 +1,7 @@
 plugins {
     id("com.android.application")
     id("com.google.gms.google-services")
+    id("androidx.baselineprofile")
 }
 
 android {
@@ -14,14 +15,31 @@ android {
         versionCode = 1
         versionName = "1.0"
 
-        testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+        // Extends AndroidJUnitRunner, so the regular instrumented tests run under it unchanged
+        testInstrumentationRunner = "androidx.benchmark.junit4.AndroidBenchmarkRunner"
     }
 
+    // Instrumented tests run against debug by default; pass -PtestBuildType=benchmark to run
+    // the benchmarks against a non-debuggable build so their numbers are representative
+    testBuildType = (project.findProperty("testBuildType") as String?) ?: "debug"
+
     buildTypes {
         release {
-            isMinifyEnabled = false
+            // R8 shrinks and optimises the release build; the baseline profile is compiled in alongside
+            isMinifyEnabled = true
+            isShrinkResources = true
             proguardFiles(getDefaultProguardFile("proguard-android-optimize.txt"), "proguard-rules.pro")
         }
+        create("benchmark") {
+            initWith(getByName("debug"))
+            isDebuggable = false
+            signingConfig = signingConfigs.getByName("debug")
+            matchingFallbacks += listOf("release")
+        }
+    }
+    testOptions {
+        // Lets plain JVM tests call android.util.Log, which then does nothing
+        unitTests.isReturnDefaultValues = true
     }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_1_8
@@ -38,7 +56,11 @@ dependencies {
     testImplementation("junit:junit:4.13.2")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
+    androidTestImplementation("androidx.benchmark:benchmark-junit4:1.2.3")
     implementation ("androidx.recyclerview:recyclerview:1.2.1")
+    // Installs the baseline profile on devices that don't get it from the Play Store
+    implementation("androidx.profileinstaller:profileinstaller:1.3.1")
+    baselineProfile(project(":macrobenchmark"))
 
 
 
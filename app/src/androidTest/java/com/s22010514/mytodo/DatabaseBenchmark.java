@@ -0,0 +1,105 @@
+package com.s22010514.mytodo;
+
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Insert and query throughput of DatabaseHelper at different table sizes, on an in-memory database.
+ */
+@RunWith(Parameterized.class)
+public class DatabaseBenchmark {
+
+    private static final String USER_ID = "benchmark-user";
+
+    @Parameterized.Parameters(name = "rows={0}")
+    public static Collection<Object[]> rowCounts() {
+        return Arrays.asList(new Object[][]{{1000}, {10000}, {100000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int rowCount;
+    private Context context;
+    private DatabaseHelper dbHelper;
+    private List<Task> tasks;
+
+    public DatabaseBenchmark(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        tasks = new ArrayList<>(rowCount);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < rowCount; i++) {
+            tasks.add(new Task(0, "Task " + i, "Description of task " + i, now + i * 60000L, i % 3 == 0));
+        }
+        dbHelper = new DatabaseHelper(context, null);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void insertTasks() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            // Each run starts from an empty table so every size is measured as written
+            state.pauseTiming();
+            dbHelper.close();
+            dbHelper = new DatabaseHelper(context, null);
+            dbHelper.getWritableDatabase();
+            state.resumeTiming();
+
+            assertEquals(rowCount, dbHelper.insertTasks(tasks, USER_ID));
+        }
+    }
+
+    @Test
+    public void queryAllTasks_andMap() {
+        dbHelper.insertTasks(tasks, USER_ID);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertEquals(rowCount, TaskPager.readTasks(dbHelper.getAllTasks(USER_ID)).size());
+        }
+    }
+
+    @Test
+    public void queryFirstTaskPage() {
+        dbHelper.insertTasks(tasks, USER_ID);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            TaskPager.readTasks(dbHelper.getTasksPage(USER_ID, null, DatabaseHelper.TASK_PAGE_SIZE));
+        }
+    }
+
+    @Test
+    public void queryStatistics() {
+        dbHelper.insertTasks(tasks, USER_ID);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            dbHelper.getUserStatistics(USER_ID);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.s22010514.mytodo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks with EXPLAIN QUERY PLAN that the USER_ID scoped queries use an index instead of a table scan.
+ * Range and keyset queries also have to name the index and the range column they seek on, since a
+ * seek on USER_ID alone that filters the rest row by row passes the no-scan check. Search pages
+ * have to come straight from the FTS index without a sort.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHelperIndexTest {
+
+    private DatabaseHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        // In-memory database so the app's own data is left alone
+        dbHelper = new DatabaseHelper(appContext, null);
+        db = dbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void notesQueries_useIndex() {
+        assertNoScan(DatabaseHelper.QUERY_ALL_NOTES, "user");
+        assertNoScan(DatabaseHelper.QUERY_NOTE_BY_ID, "1", "user");
+        assertNoScan(DatabaseHelper.QUERY_NOTE_PREVIEWS, "user");
+        assertNoScan(DatabaseHelper.QUERY_NOTE_PREVIEW_BY_ID, "1", "user");
+        assertNoScan(DatabaseHelper.QUERY_NOTE_BODY, "1", "user");
+    }
+
+    @Test
+    public void tasksQueries_useIndex() {
+        assertNoScan(DatabaseHelper.QUERY_ALL_TASKS, "user");
+        assertNoScan(DatabaseHelper.QUERY_TASK_BY_ID, "1", "user");
+        assertSearch(DatabaseHelper.QUERY_TASKS_FIRST_PAGE + " LIMIT 50",
+                "idx_tasks_user_completed_date", "USER_ID=?", "user");
+        assertSearch(DatabaseHelper.QUERY_TASKS_NEXT_PAGE + " LIMIT 50",
+                "idx_tasks_user_completed_date", "IS_COMPLETED=? AND DATE<?", "user", "0", "1000", "1000", "10");
+        assertSearch(DatabaseHelper.QUERY_TASKS_NEXT_GROUPS + " LIMIT 50",
+                "idx_tasks_user_completed_date", "IS_COMPLETED>?", "user", "0");
+    }
+
+    @Test
+    public void locationTasksQueries_useIndex() {
+        assertNoScan(DatabaseHelper.QUERY_ALL_LOCATION_TASKS, "user");
+        assertNoScan(DatabaseHelper.QUERY_LOCATION_TASK_BY_ID, "1", "user");
+        assertNoScan(DatabaseHelper.QUERY_MONITORED_LOCATION_TASKS, "user");
+    }
+
+    @Test
+    public void statisticsQuery_usesPrimaryKey() {
+        assertNoScan(DatabaseHelper.QUERY_USER_STATISTICS, "user");
+    }
+
+    @Test
+    public void geocodeCacheQuery_usesPrimaryKey() {
+        assertNoScan(DatabaseHelper.QUERY_GEOCODE_CACHE, "address:colombo");
+    }
+
+    @Test
+    public void dueQueueQueries_seekOnDate() {
+        assertSearch(DatabaseHelper.QUERY_NEXT_DUE_TASK, "idx_tasks_user_completed_date",
+                "IS_COMPLETED=? AND DATE>?", "user", "1000");
+        assertSearch(DatabaseHelper.QUERY_DUE_TASKS, "idx_tasks_user_completed_date",
+                "IS_COMPLETED=? AND DATE>?", "user", "1000", "2000");
+    }
+
+    @Test
+    public void searchQueries_pageWithoutSorting() {
+        assertFtsPage(DatabaseHelper.QUERY_SEARCH_NOTES_TITLE_HITS + " LIMIT 50", "TITLE:app*", "100", "user");
+        assertFtsPage(DatabaseHelper.QUERY_SEARCH_NOTES_OTHER_HITS + " LIMIT 50", "app*", "100", "TITLE:app*", "user");
+        assertFtsPage(DatabaseHelper.QUERY_SEARCH_TASKS_TITLE_HITS + " LIMIT 50", "TITLE:app*", "100", "user");
+        assertFtsPage(DatabaseHelper.QUERY_SEARCH_TASKS_OTHER_HITS + " LIMIT 50", "app*", "100", "TITLE:app*", "user");
+    }
+
+    @Test
+    public void tombstonePurge_usesDeletedDateIndex() {
+        assertSearch(DatabaseHelper.purgeSql("notes_table"), "idx_notes_deleted", "DELETED_DATE<?", "1000");
+        assertSearch(DatabaseHelper.purgeSql("tasks_table"), "idx_tasks_deleted", "DELETED_DATE<?", "1000");
+        assertSearch(DatabaseHelper.purgeSql("location_tasks_table"), "idx_location_tasks_deleted",
+                "DELETED_DATE<?", "1000");
+    }
+
+    // No scan, and some step seeks on the given index with the given constraint, e.g. "DATE<?"
+    private void assertSearch(String sql, String index, String constraint, String... args) {
+        assertNoScan(sql, args);
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int colDetail = cursor.getColumnIndexOrThrow("detail");
+            StringBuilder plan = new StringBuilder();
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(colDetail);
+                if (detail.startsWith("SEARCH") && detail.contains(" " + index + " (") && detail.contains(constraint)) {
+                    return;
+                }
+                plan.append(detail).append("; ");
+            }
+            fail("Expected a search on " + index + " with " + constraint + " in plan \"" + plan + "\" for: " + sql);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // The FTS index delivers the hits in order, so the only scans are of the virtual table, rows are
+    // fetched by primary key, and nothing goes through a sort
+    private void assertFtsPage(String sql, String... args) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int colDetail = cursor.getColumnIndexOrThrow("detail");
+            boolean primaryKeyLookup = false;
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(colDetail);
+                assertFalse("Table scan in plan \"" + detail + "\" for: " + sql,
+                        detail.startsWith("SCAN") && !detail.contains("VIRTUAL TABLE"));
+                assertFalse("Sort step in plan \"" + detail + "\" for: " + sql, detail.contains("TEMP B-TREE"));
+                primaryKeyLookup |= detail.startsWith("SEARCH") && detail.contains("INTEGER PRIMARY KEY");
+            }
+            assertTrue("No primary key lookup of the hits for: " + sql, primaryKeyLookup);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void assertNoScan(String sql, String... args) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int colDetail = cursor.getColumnIndexOrThrow("detail");
+            assertTrue("No query plan for: " + sql, cursor.getCount() > 0);
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(colDetail);
+                assertFalse("Table scan in plan \"" + detail + "\" for: " + sql, detail.startsWith("SCAN"));
+                assertFalse("Sort step in plan \"" + detail + "\" for: " + sql, detail.contains("TEMP B-TREE"));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
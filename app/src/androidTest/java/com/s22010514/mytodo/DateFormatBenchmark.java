@@ -0,0 +1,42 @@
+package com.s22010514.mytodo;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Cost of the date label shown on every task row as it is bound.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DateFormatBenchmark {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void formatToday() {
+        long now = System.currentTimeMillis();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            DateLabelFormatter.formatRelative(now);
+        }
+    }
+
+    @Test
+    public void formatOtherDays() {
+        // A month of dates either side of today, like a scrolled task list
+        long start = System.currentTimeMillis() - 30 * DAY_MS;
+        BenchmarkState state = benchmarkRule.getState();
+        int day = 0;
+        while (state.keepRunning()) {
+            DateLabelFormatter.formatRelative(start + day * DAY_MS);
+            day = (day + 1) % 60;
+        }
+    }
+}
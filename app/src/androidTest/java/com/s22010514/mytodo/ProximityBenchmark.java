@@ -0,0 +1,86 @@
+package com.s22010514.mytodo;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Cost of the per-fix work in LocationNotificationService.checkProximityToTasks:
+ * the geofence check plus the nearest edge search that drives the sampling policy.
+ */
+@RunWith(Parameterized.class)
+public class ProximityBenchmark {
+
+    private static final String USER_ID = "benchmark-user";
+    // Places and fixes are spread over about 20 km around this point
+    private static final double CENTER_LATITUDE = 6.9271;
+    private static final double CENTER_LONGITUDE = 79.8612;
+    private static final double SPREAD_DEGREES = 0.2;
+    private static final int FIX_COUNT = 256;
+
+    @Parameterized.Parameters(name = "places={0}")
+    public static Collection<Object[]> placeCounts() {
+        return Arrays.asList(new Object[][]{{10}, {100}, {1000}, {10000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int placeCount;
+    private final GeofenceIndex geofenceIndex = new GeofenceIndex();
+    private final double[] fixLatitudes = new double[FIX_COUNT];
+    private final double[] fixLongitudes = new double[FIX_COUNT];
+
+    private final GeofenceIndex.GeofenceListener listener = new GeofenceIndex.GeofenceListener() {
+        @Override
+        public void onEnter(LocationTask task, float distanceInMeters) {
+        }
+
+        @Override
+        public void onExit(LocationTask task) {
+        }
+    };
+
+    public ProximityBenchmark(int placeCount) {
+        this.placeCount = placeCount;
+    }
+
+    @Before
+    public void setUp() {
+        // Fixed seed so every run measures the same layout
+        Random random = new Random(42);
+        for (int i = 0; i < placeCount; i++) {
+            LocationTask task = new LocationTask(i + 1, "Place " + i, null, null,
+                    CENTER_LATITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES,
+                    CENTER_LONGITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES,
+                    100 + random.nextInt(400), true, 0, USER_ID);
+            geofenceIndex.add(new GeofenceIndex.Geofence(task, false));
+        }
+        for (int i = 0; i < FIX_COUNT; i++) {
+            fixLatitudes[i] = CENTER_LATITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+            fixLongitudes[i] = CENTER_LONGITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+        }
+    }
+
+    @Test
+    public void checkFix() {
+        BenchmarkState state = benchmarkRule.getState();
+        int fix = 0;
+        while (state.keepRunning()) {
+            double latitude = fixLatitudes[fix];
+            double longitude = fixLongitudes[fix];
+            geofenceIndex.check(latitude, longitude, USER_ID, listener);
+            geofenceIndex.nearestEdgeDistance(latitude, longitude, USER_ID);
+            fix = (fix + 1) % FIX_COUNT;
+        }
+    }
+}
@@ -8,16 +8,15 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
 import android.Manifest;
+import android.app.AlertDialog;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
 import android.provider.MediaStore;
 import android.view.View;
+import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -30,25 +29,23 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-import android.content.SharedPreferences;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 
 public class AccountPage extends AppCompatActivity {
 
     private static final int REQUEST_CAMERA_PERMISSION = 100;
-    private static final String PREFS_NAME = "UserProfile";
-    private static final String PROFILE_IMAGE_KEY = "profile_image_path";
+    // Edge length of the profile picture card in the layout
+    private static final int PROFILE_IMAGE_SIZE_DP = 100;
 
     private FirebaseAuth mAuth;
     private TextView userDisplayName, userEmailDisplay;
     private TextInputEditText nameInput, emailInput;
     private ImageView profileImageView;
     private String currentPhotoPath;
+    private ProfileImageLoader profileImageLoader;
 
     // Add TextViews for statistics
-    private TextView tasksCount, notesCount, placesCount;
-    private DatabaseHelper dbHelper;
+    private TextView tasksCount, notesCount, placesCount, tasksBreakdown;
+    private TodoRepository repository;
     private String currentUserId;
 
     // Modern Activity Result API
@@ -75,6 +72,37 @@ public class AccountPage extends AppCompatActivity {
         }
     );
 
+    private Button exportDataBtn, importDataBtn;
+    private boolean transferInProgress = false;
+
+    // The user picks where the export goes, one launcher per file type
+    private final ActivityResultLauncher<String> exportJsonLauncher = registerForActivityResult(
+        new ActivityResultContracts.CreateDocument("application/json"),
+        uri -> {
+            if (uri != null) {
+                exportData(DataExporter.Format.JSON_LINES, uri);
+            }
+        }
+    );
+
+    private final ActivityResultLauncher<String> exportCsvLauncher = registerForActivityResult(
+        new ActivityResultContracts.CreateDocument("text/csv"),
+        uri -> {
+            if (uri != null) {
+                exportData(DataExporter.Format.CSV, uri);
+            }
+        }
+    );
+
+    private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(
+        new ActivityResultContracts.OpenDocument(),
+        uri -> {
+            if (uri != null) {
+                importData(uri);
+            }
+        }
+    );
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -83,8 +111,12 @@ public class AccountPage extends AppCompatActivity {
         // Initialize Firebase Auth
         mAuth = FirebaseAuth.getInstance();
 
-        // Initialize database helper
-        dbHelper = new DatabaseHelper(this);
+        // Initialize the repository (database work runs off the main thread)
+        repository = new TodoRepository(this);
+
+        // Pictures are decoded at the size they're shown at, not the camera's full resolution
+        int profileImageSize = Math.round(PROFILE_IMAGE_SIZE_DP * getResources().getDisplayMetrics().density);
+        profileImageLoader = new ProfileImageLoader(this, profileImageSize);
 
         // Initialize views
         userDisplayName = findViewById(R.id.userDisplayName);
@@ -98,10 +130,17 @@ public class AccountPage extends AppCompatActivity {
         tasksCount = findViewById(R.id.tasksCount);
         notesCount = findViewById(R.id.notesCount);
         placesCount = findViewById(R.id.placesCount);
+        tasksBreakdown = findViewById(R.id.tasksBreakdown);
 
         // Set click listener for camera button
         editImageBtn.setOnClickListener(v -> openCamera());
 
+        exportDataBtn = findViewById(R.id.exportDataBtn);
+        importDataBtn = findViewById(R.id.importDataBtn);
+        exportDataBtn.setOnClickListener(v -> chooseExportFormat());
+        importDataBtn.setOnClickListener(v ->
+                importLauncher.launch(new String[]{"application/json", "text/*", "application/octet-stream"}));
+
         // Load user data and statistics
         loadUserData();
         loadUserStatistics();
@@ -137,76 +176,23 @@ public class AccountPage extends AppCompatActivity {
     }
 
     private void setPic() {
-        if (currentPhotoPath == null) return;
-
-        // Get the dimensions of the View
-        int targetW = profileImageView.getWidth();
-        int targetH = profileImageView.getHeight();
-
-        if (targetW == 0 || targetH == 0) {
-            // View not measured yet, set default target size
-            targetW = 300;
-            targetH = 300;
-        }
-
-        // Get the dimensions of the bitmap
-        BitmapFactory.Options bmOptions = new BitmapFactory.Options();
-        bmOptions.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(currentPhotoPath, bmOptions);
-
-        int photoW = bmOptions.outWidth;
-        int photoH = bmOptions.outHeight;
-
-        // Determine how much to scale down the image
-        int scaleFactor = Math.min(photoW/targetW, photoH/targetH);
-
-        // Decode the image file into a Bitmap sized to fill the View
-        bmOptions.inJustDecodeBounds = false;
-        bmOptions.inSampleSize = scaleFactor;
-
-        Bitmap bitmap = BitmapFactory.decodeFile(currentPhotoPath, bmOptions);
-        if (bitmap != null) {
-            profileImageView.setImageBitmap(bitmap);
-
-            // Save profile picture to user-specific location
-            saveProfilePicture(bitmap);
-
-            Toast.makeText(this, "Profile picture updated!", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    private void saveProfilePicture(Bitmap bitmap) {
         FirebaseUser currentUser = mAuth.getCurrentUser();
-        if (currentUser == null) return;
-
-        try {
-            // Create user-specific directory
-            File profileDir = new File(getFilesDir(), "profiles");
-            if (!profileDir.exists()) {
-                profileDir.mkdirs();
+        if (currentPhotoPath == null || currentUser == null) return;
+
+        // Scale down and save the photo in the background, the full-size capture is deleted afterwards
+        String photoPath = currentPhotoPath;
+        currentPhotoPath = null;
+        profileImageLoader.saveFromPhoto(currentUser.getUid(), photoPath, bitmap -> {
+            if (isDestroyed()) {
+                return;
             }
-
-            // Create user-specific filename using user UID
-            String fileName = "profile_" + currentUser.getUid() + ".jpg";
-            File profileFile = new File(profileDir, fileName);
-
-            // Save bitmap to internal storage
-            FileOutputStream fos = new FileOutputStream(profileFile);
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 85, fos);
-            fos.close();
-
-            // Save the file path in SharedPreferences with user-specific key
-            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString(PROFILE_IMAGE_KEY + "_" + currentUser.getUid(), profileFile.getAbsolutePath());
-            editor.apply();
-
-            Toast.makeText(this, "✅ Profile picture saved successfully", Toast.LENGTH_SHORT).show();
-
-        } catch (IOException e) {
-            Toast.makeText(this, "❌ Failed to save profile picture", Toast.LENGTH_SHORT).show();
-            e.printStackTrace();
-        }
+            if (bitmap != null) {
+                profileImageView.setImageBitmap(bitmap);
+                Toast.makeText(this, "✅ Profile picture saved successfully", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "❌ Failed to save profile picture", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void loadUserData() {
@@ -248,31 +234,12 @@ public class AccountPage extends AppCompatActivity {
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser == null) return;
 
-        try {
-            // Get saved profile picture path from SharedPreferences
-            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            String savedPath = prefs.getString(PROFILE_IMAGE_KEY + "_" + currentUser.getUid(), null);
-
-            if (savedPath != null) {
-                File imageFile = new File(savedPath);
-                if (imageFile.exists()) {
-                    // Load and display the saved profile picture
-                    Bitmap bitmap = BitmapFactory.decodeFile(savedPath);
-                    if (bitmap != null) {
-                        profileImageView.setImageBitmap(bitmap);
-                        currentPhotoPath = savedPath; // Update current path
-                    }
-                } else {
-                    // File doesn't exist, remove from preferences
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.remove(PROFILE_IMAGE_KEY + "_" + currentUser.getUid());
-                    editor.apply();
-                }
+        // Comes from the memory cache when the page is reopened, otherwise from the saved thumbnail
+        profileImageLoader.load(currentUser.getUid(), bitmap -> {
+            if (bitmap != null && !isDestroyed()) {
+                profileImageView.setImageBitmap(bitmap);
             }
-        } catch (Exception e) {
-            // If loading fails, just use default image
-            e.printStackTrace();
-        }
+        });
     }
 
     private File createImageFile() throws IOException {
@@ -304,6 +271,7 @@ public class AccountPage extends AppCompatActivity {
     public void logoutUser(View view) {
         // Sign out from Firebase
         mAuth.signOut();
+        ReminderScheduler.cancel(this);
 
         // Show logout confirmation message
         Toast.makeText(this, "Logged out successfully", Toast.LENGTH_SHORT).show();
@@ -341,54 +309,93 @@ public class AccountPage extends AppCompatActivity {
         }
     }
 
-    private void loadUserStatistics() {
+    private void chooseExportFormat() {
+        String date = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+        new AlertDialog.Builder(this, android.R.style.Theme_Material_Dialog_Alert)
+                .setTitle("📤 Export Data")
+                .setItems(new String[]{"JSON Lines (.jsonl)", "Spreadsheet (.csv)"}, (dialog, which) -> {
+                    if (which == 0) {
+                        exportJsonLauncher.launch("mytodo-" + date + ".jsonl");
+                    } else {
+                        exportCsvLauncher.launch("mytodo-" + date + ".csv");
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void exportData(DataExporter.Format format, Uri uri) {
         FirebaseUser currentUser = mAuth.getCurrentUser();
-        if (currentUser == null) {
+        if (currentUser == null || transferInProgress) {
             return;
         }
-
-        currentUserId = currentUser.getUid();
-
-        // Load real counts from database
-        loadTasksCount();
-        loadNotesCount();
-        loadPlacesCount();
+        setTransferInProgress(true);
+        exportDataBtn.setText("Exporting…");
+        repository.exportData(currentUser.getUid(), format, uri, (done, total) -> {
+            if (total > 0) {
+                exportDataBtn.setText("Exporting " + (done * 100 / total) + "%");
+            }
+        }, count -> {
+            if (isDestroyed()) {
+                return;
+            }
+            setTransferInProgress(false);
+            if (count >= 0) {
+                Toast.makeText(this, "✅ Exported " + count + " items", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "❌ Export failed", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
-    private void loadTasksCount() {
-        try {
-            Cursor cursor = dbHelper.getAllTasks(currentUserId);
-            int count = cursor.getCount();
-            cursor.close();
-            tasksCount.setText(String.valueOf(count));
-        } catch (Exception e) {
-            tasksCount.setText("0");
-            e.printStackTrace();
+    private void importData(Uri uri) {
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        if (currentUser == null || transferInProgress) {
+            return;
         }
+        setTransferInProgress(true);
+        importDataBtn.setText("Importing…");
+        repository.importData(currentUser.getUid(), uri, (done, total) ->
+                importDataBtn.setText("Imported " + done), count -> {
+            if (isDestroyed()) {
+                return;
+            }
+            setTransferInProgress(false);
+            if (count >= 0) {
+                Toast.makeText(this, "✅ Imported " + count + " items", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "❌ Import failed, some items may have been added", Toast.LENGTH_SHORT).show();
+            }
+            loadUserStatistics();
+        });
     }
 
-    private void loadNotesCount() {
-        try {
-            Cursor cursor = dbHelper.getAllNotes(currentUserId);
-            int count = cursor.getCount();
-            cursor.close();
-            notesCount.setText(String.valueOf(count));
-        } catch (Exception e) {
-            notesCount.setText("0");
-            e.printStackTrace();
+    // Only one transfer at a time; the buttons show progress while it runs
+    private void setTransferInProgress(boolean inProgress) {
+        transferInProgress = inProgress;
+        exportDataBtn.setEnabled(!inProgress);
+        importDataBtn.setEnabled(!inProgress);
+        if (!inProgress) {
+            exportDataBtn.setText("Export Data");
+            importDataBtn.setText("Import Data");
         }
     }
 
-    private void loadPlacesCount() {
-        try {
-            Cursor cursor = dbHelper.getAllLocationTasks(currentUserId);
-            int count = cursor.getCount();
-            cursor.close();
-            placesCount.setText(String.valueOf(count));
-        } catch (Exception e) {
-            placesCount.setText("0");
-            e.printStackTrace();
+    private void loadUserStatistics() {
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        if (currentUser == null) {
+            return;
         }
+
+        currentUserId = currentUser.getUid();
+
+        // Load all counts from the statistics table in one query
+        repository.loadUserStatistics(currentUserId, stats -> {
+            tasksCount.setText(String.valueOf(stats.getTaskCount()));
+            notesCount.setText(String.valueOf(stats.getNoteCount()));
+            placesCount.setText(String.valueOf(stats.getPlaceCount()));
+            tasksBreakdown.setText(stats.getCompletedTaskCount() + " done · " + stats.getPendingTaskCount() + " pending");
+        });
     }
 
     @Override
@@ -15,7 +15,7 @@ public class AddNotePage extends AppCompatActivity {
     private EditText noteBodyInput;
     private MaterialButton saveNoteButton;
     private MaterialButton cancelNoteButton;
-    private DatabaseHelper dbHelper;
+    private TodoRepository repository;
     private int noteId = -1;
     private FirebaseAuth mAuth;
     private String currentUserId;
@@ -44,8 +44,8 @@ public class AddNotePage extends AppCompatActivity {
         // Initialize UI elements
         initializeViews();
 
-        // Initialize DatabaseHelper
-        dbHelper = new DatabaseHelper(this);
+        // Initialize the repository (database work runs off the main thread)
+        repository = new TodoRepository(this);
 
         // Check if editing an existing note
         checkForEditIntent();
@@ -103,25 +103,31 @@ public class AddNotePage extends AppCompatActivity {
             return;
         }
 
-        boolean result;
+        // Prevent double saves while the write is running
+        saveNoteButton.setEnabled(false);
+
         if (noteId == -1) {
             // New note - include user ID
-            result = dbHelper.insertNote(title, body, currentUserId);
-            if (result) {
-                Toast.makeText(this, "✅ Note saved successfully", Toast.LENGTH_SHORT).show();
-                finish();
-            } else {
-                Toast.makeText(this, "❌ Failed to save note", Toast.LENGTH_SHORT).show();
-            }
+            repository.insertNote(title, body, currentUserId, result -> {
+                if (result) {
+                    Toast.makeText(this, "✅ Note saved successfully", Toast.LENGTH_SHORT).show();
+                    finish();
+                } else {
+                    saveNoteButton.setEnabled(true);
+                    Toast.makeText(this, "❌ Failed to save note", Toast.LENGTH_SHORT).show();
+                }
+            });
         } else {
             // Update existing note - include user ID for security
-            result = dbHelper.updateNoteById(noteId, title, body, currentUserId);
-            if (result) {
-                Toast.makeText(this, "✅ Note updated successfully", Toast.LENGTH_SHORT).show();
-                finish();
-            } else {
-                Toast.makeText(this, "❌ Failed to update note or unauthorized access", Toast.LENGTH_SHORT).show();
-            }
+            repository.updateNote(noteId, title, body, currentUserId, result -> {
+                if (result) {
+                    Toast.makeText(this, "✅ Note updated successfully", Toast.LENGTH_SHORT).show();
+                    finish();
+                } else {
+                    saveNoteButton.setEnabled(true);
+                    Toast.makeText(this, "❌ Failed to update note or unauthorized access", Toast.LENGTH_SHORT).show();
+                }
+            });
         }
     }
 
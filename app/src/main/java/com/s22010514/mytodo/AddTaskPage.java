@@ -35,8 +35,8 @@ public class AddTaskPage extends AppCompatActivity {
 
     private int taskId = -1;
 
-    // Define DatabaseHelper instance
-    private DatabaseHelper dbHelper;
+    // Repository for database access off the main thread
+    private TodoRepository repository;
 
     // Variable to store selected date in milliseconds
     private long selectedDateInMillis;
@@ -68,8 +68,8 @@ public class AddTaskPage extends AppCompatActivity {
         mediumPriorityBtn = findViewById(R.id.mediumPriorityBtn);
         highPriorityBtn = findViewById(R.id.highPriorityBtn);
 
-        // Initialize DatabaseHelper
-        dbHelper = new DatabaseHelper(this);
+        // Initialize the repository
+        repository = new TodoRepository(this);
 
         // Set default priority selection (Medium)
         selectPriorityButton(mediumPriorityBtn, "Medium");
@@ -87,7 +87,7 @@ public class AddTaskPage extends AppCompatActivity {
             // Set the retrieved data to the UI elements
             taskTitleInput.setText(taskTitle);
             taskDescriptionInput.setText(taskDescription);
-            selectedDateTextView.setText(formatDate(selectedDateInMillis));
+            selectedDateTextView.setText(DateLabelFormatter.format(selectedDateInMillis));
         }
 
         // Set an OnClickListener for the date button
@@ -119,26 +119,31 @@ public class AddTaskPage extends AppCompatActivity {
             }
             String userId = currentUser.getUid();
 
+            // Prevent double saves while the write is running
+            saveTaskButton.setEnabled(false);
+
             if (taskId == -1) {
                 // If taskId is -1 then it's a new task, so insert it into the database
-                boolean result = dbHelper.insertTask(taskTitle, taskDescription, selectedDateInMillis, userId);
-
-                if (result) {
-                    Toast.makeText(AddTaskPage.this, "Task saved successfully", Toast.LENGTH_SHORT).show();
-                    finish();
-                } else {
-                    Toast.makeText(AddTaskPage.this, "Failed to save task", Toast.LENGTH_SHORT).show();
-                }
+                repository.insertTask(taskTitle, taskDescription, selectedDateInMillis, userId, result -> {
+                    if (result) {
+                        Toast.makeText(AddTaskPage.this, "Task saved successfully", Toast.LENGTH_SHORT).show();
+                        finish();
+                    } else {
+                        saveTaskButton.setEnabled(true);
+                        Toast.makeText(AddTaskPage.this, "Failed to save task", Toast.LENGTH_SHORT).show();
+                    }
+                });
             } else {
                 // If taskId is not -1 then update the existing task in the database
-                boolean result = dbHelper.updateTaskById(taskId, taskTitle, taskDescription, selectedDateInMillis, userId);
-
-                if (result) {
-                    Toast.makeText(AddTaskPage.this, "Task updated successfully", Toast.LENGTH_SHORT).show();
-                    finish();
-                } else {
-                    Toast.makeText(AddTaskPage.this, "Failed to update task", Toast.LENGTH_SHORT).show();
-                }
+                repository.updateTask(taskId, taskTitle, taskDescription, selectedDateInMillis, userId, result -> {
+                    if (result) {
+                        Toast.makeText(AddTaskPage.this, "Task updated successfully", Toast.LENGTH_SHORT).show();
+                        finish();
+                    } else {
+                        saveTaskButton.setEnabled(true);
+                        Toast.makeText(AddTaskPage.this, "Failed to update task", Toast.LENGTH_SHORT).show();
+                    }
+                });
             }
         });
     }
@@ -201,19 +206,9 @@ public class AddTaskPage extends AppCompatActivity {
             Calendar selectedDate = Calendar.getInstance();
             selectedDate.set(selectedYear, selectedMonth, selectedDay);
             selectedDateInMillis = selectedDate.getTimeInMillis();
-            selectedDateTextView.setText(formatDate(selectedDateInMillis));
+            selectedDateTextView.setText(DateLabelFormatter.format(selectedDateInMillis));
         }, year, month, day);
 
         datePickerDialog.show();
     }
-
-    // Method to format date from milliseconds to a readable format
-    private String formatDate(long dateInMillis) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(dateInMillis);
-        int year = calendar.get(Calendar.YEAR);
-        int month = calendar.get(Calendar.MONTH) + 1;
-        int day = calendar.get(Calendar.DAY_OF_MONTH);
-        return day + "/" + month + "/" + year;
-    }
 }
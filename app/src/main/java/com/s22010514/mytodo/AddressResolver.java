@@ -0,0 +1,213 @@
+package com.s22010514.mytodo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.location.Address;
+import android.location.Geocoder;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forward and reverse geocoding off the main thread, backed by a cache table in the database.
+ * Addresses are cached under their normalised text and coordinates rounded to about 11 m, so
+ * looking up a saved place again is answered from the cache, also when the device is offline.
+ * Each new lookup supersedes the previous one; results of superseded lookups are dropped.
+ */
+public class AddressResolver {
+
+    private static final String TAG = "AddressResolver";
+
+    public static final int FOUND = 0;
+    public static final int NOT_FOUND = 1;
+    public static final int FAILED = 2;
+
+    // Four decimal places, about 11 m, close enough to share an address
+    private static final double COORDINATE_SCALE = 10000.0;
+
+    // Geocoder calls block for a network round trip, one at a time is plenty for one screen
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final DatabaseHelper dbHelper;
+    private final Geocoder geocoder;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    public static class Result {
+        public final int status;
+        public final String address;
+        public final double latitude;
+        public final double longitude;
+
+        Result(int status, String address, double latitude, double longitude) {
+            this.status = status;
+            this.address = address;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    public AddressResolver(Context context) {
+        this.dbHelper = DatabaseHelper.getInstance(context);
+        this.geocoder = new Geocoder(context.getApplicationContext(), Locale.getDefault());
+    }
+
+    // Finds the coordinates of a typed address
+    public void resolveAddress(String address, TodoRepository.Callback<Result> callback) {
+        int request = generation.incrementAndGet();
+        executor.execute(() -> {
+            String key = addressKey(address);
+            Result result = readCache(key);
+            if (result == null && isCurrent(request)) {
+                result = lookUpAddress(address);
+                if (result.status == FOUND) {
+                    writeCache(key, result.address, result.latitude, result.longitude);
+                }
+            }
+            deliver(request, result, callback);
+        });
+    }
+
+    // Finds a readable address for a position
+    public void resolveLocation(double latitude, double longitude, TodoRepository.Callback<Result> callback) {
+        int request = generation.incrementAndGet();
+        executor.execute(() -> {
+            String key = locationKey(latitude, longitude);
+            Result result = readCache(key);
+            if (result == null && isCurrent(request)) {
+                result = lookUpLocation(latitude, longitude);
+                if (result.status == FOUND) {
+                    writeCache(key, result.address, latitude, longitude);
+                    // Typing the same address back in then gives these exact coordinates
+                    writeCache(addressKey(result.address), result.address, latitude, longitude);
+                }
+            }
+            deliver(request, result, callback);
+        });
+    }
+
+    // Caches a saved place both ways, so editing it later needs no network
+    public void remember(String address, double latitude, double longitude) {
+        if (address == null || address.trim().isEmpty()) {
+            return;
+        }
+        executor.execute(() -> {
+            writeCache(addressKey(address), address, latitude, longitude);
+            writeCache(locationKey(latitude, longitude), address, latitude, longitude);
+        });
+    }
+
+    // Drops the result of any lookup still running, e.g. when the screen closes
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    private boolean isCurrent(int request) {
+        return generation.get() == request;
+    }
+
+    private void deliver(int request, Result result, TodoRepository.Callback<Result> callback) {
+        if (result == null || !isCurrent(request)) {
+            return;
+        }
+        mainHandler.post(() -> {
+            if (isCurrent(request)) {
+                callback.onResult(result);
+            }
+        });
+    }
+
+    private Result readCache(String key) {
+        try (Cursor cursor = dbHelper.getCachedGeocode(key)) {
+            if (cursor.moveToFirst()) {
+                return new Result(FOUND, cursor.getString(0), cursor.getDouble(1), cursor.getDouble(2));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read geocode cache", e);
+        }
+        return null;
+    }
+
+    private void writeCache(String key, String address, double latitude, double longitude) {
+        try {
+            dbHelper.putCachedGeocode(key, address, latitude, longitude);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write geocode cache", e);
+        }
+    }
+
+    private Result lookUpAddress(String address) {
+        try {
+            List<Address> addresses = geocoder.getFromLocationName(address, 1);
+            if (addresses != null && !addresses.isEmpty()) {
+                Address location = addresses.get(0);
+                return new Result(FOUND, address, location.getLatitude(), location.getLongitude());
+            }
+            return new Result(NOT_FOUND, address, 0, 0);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Geocoding failed: " + e.getMessage());
+            return new Result(FAILED, address, 0, 0);
+        }
+    }
+
+    private Result lookUpLocation(double latitude, double longitude) {
+        try {
+            List<Address> addresses = geocoder.getFromLocation(latitude, longitude, 1);
+            String address = addresses != null && !addresses.isEmpty() ? formatAddress(addresses.get(0)) : "";
+            if (!address.isEmpty()) {
+                return new Result(FOUND, address, latitude, longitude);
+            }
+            return new Result(NOT_FOUND, null, latitude, longitude);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Reverse geocoding failed: " + e.getMessage());
+            return new Result(FAILED, null, latitude, longitude);
+        }
+    }
+
+    // "12 Main St, Colombo, Western Province, Sri Lanka", leaving out the parts that are missing
+    private static String formatAddress(Address address) {
+        StringBuilder addressBuilder = new StringBuilder();
+        if (address.getSubThoroughfare() != null) {
+            addressBuilder.append(address.getSubThoroughfare()).append(" ");
+        }
+        if (address.getThoroughfare() != null) {
+            addressBuilder.append(address.getThoroughfare()).append(", ");
+        }
+        if (address.getLocality() != null) {
+            addressBuilder.append(address.getLocality()).append(", ");
+        }
+        if (address.getAdminArea() != null) {
+            addressBuilder.append(address.getAdminArea()).append(", ");
+        }
+        if (address.getCountryName() != null) {
+            addressBuilder.append(address.getCountryName());
+        }
+
+        String fullAddress = addressBuilder.toString();
+        if (fullAddress.endsWith(", ")) {
+            fullAddress = fullAddress.substring(0, fullAddress.length() - 2);
+        }
+        return fullAddress;
+    }
+
+    // Case, extra spaces and spacing around commas don't make a different address
+    static String addressKey(String address) {
+        String normalised = address.trim().toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .replaceAll(" ?, ?", ", ");
+        return "address:" + normalised;
+    }
+
+    // Reverse results are in the device language, so it is part of the key
+    static String locationKey(double latitude, double longitude) {
+        return "location:" + Locale.getDefault().getLanguage() + ":"
+                + Math.round(latitude * COORDINATE_SCALE) + "," + Math.round(longitude * COORDINATE_SCALE);
+    }
+}
@@ -0,0 +1,135 @@
+package com.s22010514.mytodo;
+
+/**
+ * Turns raw light sensor readings into dark/light theme decisions that only change on a
+ * sustained change in lighting. Readings are averaged over time, dark mode has separate enter and
+ * exit thresholds, and the new mode has to hold for DWELL_TIME_MS before it is reported.
+ * The light sensor only reports changes, so each reading counts as the light level until the next
+ * one, and check() lets the caller decide on a steady level without waiting for another event.
+ */
+public class AmbientLightFilter {
+
+    public static final int NO_CHANGE = 0;
+    public static final int SWITCH_TO_DARK = 1;
+    public static final int SWITCH_TO_LIGHT = 2;
+
+    // Below this average the room counts as dark, above EXIT_DARK_LUX as light again;
+    // in between the current mode stays, so a reading hovering around 20 lux can't flip it
+    static final float ENTER_DARK_LUX = 15f;
+    static final float EXIT_DARK_LUX = 30f;
+    // Used for the first decision when neither theme has been chosen yet
+    static final float INITIAL_DARK_LUX = 20f;
+
+    // The average covers this much time, not a number of readings
+    static final long WINDOW_MS = 2000;
+    // Far more than a window's worth of readings at SENSOR_DELAY_NORMAL
+    private static final int MAX_READINGS = 32;
+
+    // How long the average has to stay past a threshold before the theme changes
+    static final long DWELL_TIME_MS = 3000;
+
+    // Ring buffer of readings, oldest at first
+    private final float[] luxes = new float[MAX_READINGS];
+    private final long[] times = new long[MAX_READINGS];
+    private int first;
+    private int count;
+
+    // Null while the app still follows the system theme, so the first decision uses INITIAL_DARK_LUX
+    private Boolean dark;
+    // When the average first crossed into the other mode, -1 while it agrees with the current one
+    private long pendingSince = -1;
+
+    public AmbientLightFilter(Boolean dark) {
+        this.dark = dark;
+    }
+
+    // Starts over from the given mode, e.g. after the listener was paused
+    public void reset(Boolean dark) {
+        this.dark = dark;
+        first = 0;
+        count = 0;
+        pendingSince = -1;
+    }
+
+    // Adds a reading and returns whether the theme should change now
+    public int onReading(float lux, long timeMs) {
+        if (count == MAX_READINGS) {
+            first = (first + 1) % MAX_READINGS;
+            count--;
+        }
+        int slot = (first + count) % MAX_READINGS;
+        luxes[slot] = lux;
+        times[slot] = timeMs;
+        count++;
+        return check(timeMs);
+    }
+
+    // Decides again with the last reading still holding, for when no new reading has come in
+    public int check(long timeMs) {
+        if (count == 0) {
+            return NO_CHANGE;
+        }
+        boolean wantsDark = wantsDark(average(timeMs));
+        if (dark != null && wantsDark == dark) {
+            pendingSince = -1;
+            return NO_CHANGE;
+        }
+        if (pendingSince < 0) {
+            pendingSince = timeMs;
+        }
+        if (timeMs - pendingSince < DWELL_TIME_MS) {
+            return NO_CHANGE;
+        }
+
+        dark = wantsDark;
+        pendingSince = -1;
+        return dark ? SWITCH_TO_DARK : SWITCH_TO_LIGHT;
+    }
+
+    // How long until check() should run again if no reading comes in, or -1 when nothing is about to change.
+    // That is the end of the dwell time, or when the latest reading has filled the window if it alone
+    // points at the other mode but the average doesn't yet
+    public long getRecheckDelay(long timeMs) {
+        if (pendingSince >= 0) {
+            return Math.max(0, pendingSince + DWELL_TIME_MS - timeMs);
+        }
+        if (count == 0) {
+            return -1;
+        }
+        int latest = (first + count - 1) % MAX_READINGS;
+        boolean latestWantsDark = wantsDark(luxes[latest]);
+        if (dark != null && latestWantsDark == dark) {
+            return -1;
+        }
+        return Math.max(0, times[latest] + WINDOW_MS - timeMs);
+    }
+
+    private boolean wantsDark(float lux) {
+        if (dark == null) {
+            return lux < INITIAL_DARK_LUX;
+        }
+        return dark ? lux < EXIT_DARK_LUX : lux < ENTER_DARK_LUX;
+    }
+
+    // Each reading weighted by how long it held within the last WINDOW_MS
+    private float average(long timeMs) {
+        long windowStart = timeMs - WINDOW_MS;
+        long end = timeMs;
+        double weightedSum = 0;
+        long covered = 0;
+        for (int i = count - 1; i >= 0 && end > windowStart; i--) {
+            int slot = (first + i) % MAX_READINGS;
+            long start = Math.max(times[slot], windowStart);
+            if (end > start) {
+                weightedSum += luxes[slot] * (double) (end - start);
+                covered += end - start;
+            }
+            end = Math.min(end, times[slot]);
+        }
+        if (covered == 0) {
+            // Only a reading taken right now
+            return luxes[(first + count - 1) % MAX_READINGS];
+        }
+        return (float) (weightedSum / covered);
+    }
+}
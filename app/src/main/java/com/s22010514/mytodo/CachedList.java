@@ -0,0 +1,21 @@
+package com.s22010514.mytodo;
+
+import androidx.lifecycle.ViewModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps a list page's rows and the DataChangeBus version they were loaded at across configuration changes
+public class CachedList<T> extends ViewModel {
+
+    final List<T> items = new ArrayList<>();
+
+    // -1 until the first load, so the first onResume always reads the database
+    long version = -1;
+
+    // Search text the items were found with, empty when they are the full list
+    String searchQuery = "";
+    // Pages through the hits for searchQuery, null when the items are the full list
+    SearchPager searchPager;
+    boolean hasMoreSearchHits;
+}
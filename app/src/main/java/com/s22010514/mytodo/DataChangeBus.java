@@ -0,0 +1,159 @@
+package com.s22010514.mytodo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide record of database writes. Every write bumps a per-table version
+ * and appends a row-level change, so screens can skip reloading when their
+ * cached version is current and otherwise fetch just the rows that changed.
+ */
+public class DataChangeBus {
+
+    public static final String TABLE_NOTES = "notes";
+    public static final String TABLE_TASKS = "tasks";
+    public static final String TABLE_LOCATION_TASKS = "location_tasks";
+
+    public static final int CHANGE_INSERT = 1;
+    public static final int CHANGE_UPDATE = 2;
+    public static final int CHANGE_DELETE = 3;
+
+    // Row ID used when a write touched rows that can't be listed individually
+    public static final int UNKNOWN_ROW = -1;
+
+    // How many changes are kept per table before callers have to fall back to a full reload
+    private static final int MAX_LOG_SIZE = 200;
+
+    private static DataChangeBus instance;
+
+    private final Map<String, Long> versions = new HashMap<>();
+    private final Map<String, ArrayDeque<Change>> logs = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Called on the writing thread right after a change is recorded, so it has to return quickly
+    public interface Listener {
+        void onChange(String table, int type);
+    }
+
+    public static class Change {
+        public final long version;
+        public final int type;
+        public final int rowId;
+
+        Change(long version, int type, int rowId) {
+            this.version = version;
+            this.type = type;
+            this.rowId = rowId;
+        }
+    }
+
+    public static synchronized DataChangeBus getInstance() {
+        if (instance == null) {
+            instance = new DataChangeBus();
+        }
+        return instance;
+    }
+
+    public synchronized void publish(String table, int type, int rowId) {
+        append(table, type, rowId);
+        notifyListeners(table, type);
+    }
+
+    // One bulk write. More rows than the log holds would only push every reader to a full reload
+    // anyway, so they are recorded as a single UNKNOWN_ROW change; listeners run once either way
+    public synchronized void publishAll(String table, int type, Collection<Integer> rowIds) {
+        if (rowIds.isEmpty()) {
+            return;
+        }
+        if (rowIds.size() > MAX_LOG_SIZE) {
+            append(table, type, UNKNOWN_ROW);
+        } else {
+            for (int rowId : rowIds) {
+                append(table, type, rowId);
+            }
+        }
+        notifyListeners(table, type);
+    }
+
+    private void append(String table, int type, int rowId) {
+        long version = getVersion(table) + 1;
+        versions.put(table, version);
+
+        ArrayDeque<Change> log = logs.get(table);
+        if (log == null) {
+            log = new ArrayDeque<>();
+            logs.put(table, log);
+        }
+        log.addLast(new Change(version, type, rowId));
+        if (log.size() > MAX_LOG_SIZE) {
+            log.removeFirst();
+        }
+    }
+
+    private void notifyListeners(String table, int type) {
+        for (Listener listener : listeners) {
+            listener.onChange(table, type);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized long getVersion(String table) {
+        Long version = versions.get(table);
+        return version != null ? version : 0;
+    }
+
+    // Changes made after sinceVersion, or null if the log no longer reaches back that far
+    public synchronized List<Change> getChangesSince(String table, long sinceVersion) {
+        List<Change> changes = new ArrayList<>();
+        long current = getVersion(table);
+        if (sinceVersion >= current) {
+            return changes;
+        }
+
+        ArrayDeque<Change> log = logs.get(table);
+        if (log == null || log.isEmpty() || log.peekFirst().version > sinceVersion + 1) {
+            return null;
+        }
+        for (Change change : log) {
+            if (change.version > sinceVersion) {
+                if (change.rowId == UNKNOWN_ROW) {
+                    return null;
+                }
+                changes.add(change);
+            }
+        }
+        return changes;
+    }
+
+    // Distinct row IDs touched by the given changes, in the order they were first changed
+    public static Set<Integer> changedRowIds(List<Change> changes) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (Change change : changes) {
+            ids.add(change.rowId);
+        }
+        return ids;
+    }
+
+    public static boolean containsInsert(List<Change> changes) {
+        for (Change change : changes) {
+            if (change.type == CHANGE_INSERT) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
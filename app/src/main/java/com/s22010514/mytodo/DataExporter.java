@@ -0,0 +1,305 @@
+package com.s22010514.mytodo;
+
+import android.database.Cursor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes all of a user's notes, tasks and saved places to a stream, one record per line (JSON Lines)
+ * or row (CSV). Rows are written straight from the database cursors, so memory use doesn't grow
+ * with the number of rows.
+ */
+public class DataExporter {
+
+    public enum Format { JSON_LINES, CSV }
+
+    // Record types, written as the "type" field of every line or row
+    static final String TYPE_NOTE = "note";
+    static final String TYPE_TASK = "task";
+    static final String TYPE_LOCATION_TASK = "location_task";
+
+    // Field names shared by both formats; body holds a note's body or a task's description
+    static final String FIELD_TYPE = "type";
+    static final String FIELD_TITLE = "title";
+    static final String FIELD_BODY = "body";
+    static final String FIELD_DATE = "date";
+    static final String FIELD_COMPLETED = "completed";
+    static final String FIELD_ADDRESS = "address";
+    static final String FIELD_LATITUDE = "latitude";
+    static final String FIELD_LONGITUDE = "longitude";
+    static final String FIELD_RADIUS = "radius";
+    static final String FIELD_NOTIFICATIONS = "notifications";
+    static final String FIELD_CREATED = "created";
+
+    // CSV header, every row has all columns and leaves the ones its type doesn't use empty
+    static final String[] CSV_COLUMNS = {
+            FIELD_TYPE, FIELD_TITLE, FIELD_BODY, FIELD_DATE, FIELD_COMPLETED, FIELD_ADDRESS,
+            FIELD_LATITUDE, FIELD_LONGITUDE, FIELD_RADIUS, FIELD_NOTIFICATIONS, FIELD_CREATED
+    };
+
+    // Progress is reported once per this many rows
+    static final int PROGRESS_INTERVAL = 500;
+
+    public interface ProgressListener {
+        // total is -1 when it isn't known up front
+        void onProgress(int done, int total);
+    }
+
+    private final DatabaseHelper dbHelper;
+
+    public DataExporter(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    // Writes every row of the user and returns how many were written; the stream is closed afterwards
+    public int export(String userId, Format format, OutputStream out, ProgressListener progress)
+            throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024)) {
+            UserStatistics stats = dbHelper.getUserStatistics(userId);
+            int total = stats.getNoteCount() + stats.getTaskCount() + stats.getPlaceCount();
+            RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(writer) : new JsonRowWriter(writer);
+            int count = 0;
+            count = writeNotes(userId, rowWriter, count, total, progress);
+            count = writeTasks(userId, rowWriter, count, total, progress);
+            count = writeLocationTasks(userId, rowWriter, count, total, progress);
+            if (progress != null) {
+                progress.onProgress(count, total);
+            }
+            return count;
+        }
+    }
+
+    private int writeNotes(String userId, RowWriter out, int count, int total, ProgressListener progress)
+            throws IOException {
+        try (Cursor cursor = dbHelper.getAllNotes(userId)) {
+            int colTitle = cursor.getColumnIndex(DatabaseHelper.COL_2);
+            int colBody = cursor.getColumnIndex(DatabaseHelper.COL_3);
+            while (cursor.moveToNext()) {
+                out.begin(TYPE_NOTE);
+                out.text(FIELD_TITLE, cursor.getString(colTitle));
+                out.text(FIELD_BODY, cursor.getString(colBody));
+                out.end();
+                reportProgress(++count, total, progress);
+            }
+        }
+        return count;
+    }
+
+    private int writeTasks(String userId, RowWriter out, int count, int total, ProgressListener progress)
+            throws IOException {
+        try (Cursor cursor = dbHelper.getAllTasks(userId)) {
+            int colTitle = cursor.getColumnIndex(DatabaseHelper.TASK_COL_2);
+            int colDescription = cursor.getColumnIndex(DatabaseHelper.TASK_COL_3);
+            int colDate = cursor.getColumnIndex(DatabaseHelper.TASK_COL_4);
+            int colCompleted = cursor.getColumnIndex(DatabaseHelper.TASK_COL_5);
+            while (cursor.moveToNext()) {
+                out.begin(TYPE_TASK);
+                out.text(FIELD_TITLE, cursor.getString(colTitle));
+                out.text(FIELD_BODY, cursor.getString(colDescription));
+                out.number(FIELD_DATE, cursor.getLong(colDate));
+                out.bool(FIELD_COMPLETED, cursor.getInt(colCompleted) == 1);
+                out.end();
+                reportProgress(++count, total, progress);
+            }
+        }
+        return count;
+    }
+
+    private int writeLocationTasks(String userId, RowWriter out, int count, int total, ProgressListener progress)
+            throws IOException {
+        try (Cursor cursor = dbHelper.getAllLocationTasks(userId)) {
+            int colTitle = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_2);
+            int colDescription = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_3);
+            int colAddress = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_4);
+            int colLatitude = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_5);
+            int colLongitude = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_6);
+            int colRadius = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_7);
+            int colEnabled = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_8);
+            int colCreated = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_9);
+            while (cursor.moveToNext()) {
+                out.begin(TYPE_LOCATION_TASK);
+                out.text(FIELD_TITLE, cursor.getString(colTitle));
+                out.text(FIELD_BODY, cursor.getString(colDescription));
+                out.text(FIELD_ADDRESS, cursor.getString(colAddress));
+                out.decimal(FIELD_LATITUDE, cursor.getDouble(colLatitude));
+                out.decimal(FIELD_LONGITUDE, cursor.getDouble(colLongitude));
+                out.number(FIELD_RADIUS, cursor.getInt(colRadius));
+                out.bool(FIELD_NOTIFICATIONS, cursor.getInt(colEnabled) == 1);
+                out.number(FIELD_CREATED, cursor.getLong(colCreated));
+                out.end();
+                reportProgress(++count, total, progress);
+            }
+        }
+        return count;
+    }
+
+    private static void reportProgress(int count, int total, ProgressListener progress) {
+        if (progress != null && count % PROGRESS_INTERVAL == 0) {
+            progress.onProgress(count, total);
+        }
+    }
+
+    // Writes one record at a time in either format
+    private interface RowWriter {
+        void begin(String type) throws IOException;
+
+        void text(String field, String value) throws IOException;
+
+        void number(String field, long value) throws IOException;
+
+        void decimal(String field, double value) throws IOException;
+
+        void bool(String field, boolean value) throws IOException;
+
+        void end() throws IOException;
+    }
+
+    // One JSON object per line, only the current row is held in memory
+    private static class JsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private JSONObject row;
+
+        JsonRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void begin(String type) throws IOException {
+            row = new JSONObject();
+            put(FIELD_TYPE, type);
+        }
+
+        @Override
+        public void text(String field, String value) throws IOException {
+            if (value != null) {
+                put(field, value);
+            }
+        }
+
+        @Override
+        public void number(String field, long value) throws IOException {
+            put(field, value);
+        }
+
+        @Override
+        public void decimal(String field, double value) throws IOException {
+            put(field, value);
+        }
+
+        @Override
+        public void bool(String field, boolean value) throws IOException {
+            put(field, value);
+        }
+
+        @Override
+        public void end() throws IOException {
+            // JSONObject escapes line breaks, so each record stays on one line
+            writer.write(row.toString());
+            writer.write('\n');
+        }
+
+        private void put(String field, Object value) throws IOException {
+            try {
+                row.put(field, value);
+            } catch (JSONException e) {
+                throw new IOException("Can't write " + field, e);
+            }
+        }
+    }
+
+    // RFC 4180 CSV: fields with commas, quotes or line breaks are quoted, quotes are doubled
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+        private final String[] values = new String[CSV_COLUMNS.length];
+
+        CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            for (int i = 0; i < CSV_COLUMNS.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(CSV_COLUMNS[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void begin(String type) {
+            Arrays.fill(values, null);
+            values[0] = type;
+        }
+
+        @Override
+        public void text(String field, String value) {
+            values[columnIndex(field)] = value;
+        }
+
+        @Override
+        public void number(String field, long value) {
+            values[columnIndex(field)] = String.valueOf(value);
+        }
+
+        @Override
+        public void decimal(String field, double value) {
+            values[columnIndex(field)] = String.valueOf(value);
+        }
+
+        @Override
+        public void bool(String field, boolean value) {
+            values[columnIndex(field)] = value ? "1" : "0";
+        }
+
+        @Override
+        public void end() throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeField(values[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            boolean needsQuotes = false;
+            for (int i = 0; i < value.length() && !needsQuotes; i++) {
+                char c = value.charAt(i);
+                needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!needsQuotes) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    writer.write('"');
+                }
+                writer.write(c);
+            }
+            writer.write('"');
+        }
+
+        private static int columnIndex(String field) {
+            for (int i = 0; i < CSV_COLUMNS.length; i++) {
+                if (CSV_COLUMNS[i].equals(field)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("Unknown column " + field);
+        }
+    }
+}
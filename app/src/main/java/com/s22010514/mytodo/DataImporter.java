@@ -0,0 +1,318 @@
+package com.s22010514.mytodo;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a file written by DataExporter and adds its rows to a user's data. The file is parsed
+ * one record at a time and rows are inserted in batches of BATCH_SIZE, each batch in its own
+ * transaction, so a large file never has to fit in memory or hold the database for long.
+ * Imported rows get new IDs, so importing the same file twice adds the rows twice.
+ */
+public class DataImporter {
+
+    // Rows buffered per table before they're written in one transaction
+    static final int BATCH_SIZE = 500;
+
+    private final DatabaseHelper dbHelper;
+
+    private final List<Note> notes = new ArrayList<>();
+    private final List<Task> tasks = new ArrayList<>();
+    private final List<LocationTask> locationTasks = new ArrayList<>();
+    private String userId;
+    private int records;
+    private int imported;
+    private int skipped;
+
+    public DataImporter(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    // Number of lines or rows the last import couldn't read
+    public int getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * Imports every record in the stream for the user and returns how many rows were added.
+     * The format is detected from the first character: JSON Lines start with '{'.
+     * Progress totals are -1 because the number of records isn't known up front.
+     */
+    public int importData(String userId, InputStream in, DataExporter.ProgressListener progress)
+            throws IOException {
+        this.userId = userId;
+        records = 0;
+        imported = 0;
+        skipped = 0;
+        notes.clear();
+        tasks.clear();
+        locationTasks.clear();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024)) {
+            if (isJsonLines(reader)) {
+                importJsonLines(reader, progress);
+            } else {
+                importCsv(reader, progress);
+            }
+            flush();
+        } finally {
+            notes.clear();
+            tasks.clear();
+            locationTasks.clear();
+        }
+        if (progress != null) {
+            progress.onProgress(records, -1);
+        }
+        return imported;
+    }
+
+    private static boolean isJsonLines(BufferedReader reader) throws IOException {
+        reader.mark(1024);
+        try {
+            for (int i = 0; i < 1024; i++) {
+                int c = reader.read();
+                // Skip a byte order mark and leading whitespace
+                if (c == -1 || (c != '\uFEFF' && !Character.isWhitespace(c))) {
+                    return c == '{';
+                }
+            }
+            return false;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    private void importJsonLines(BufferedReader reader, DataExporter.ProgressListener progress) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                JSONObject row = new JSONObject(line);
+                addRecord(row.optString(DataExporter.FIELD_TYPE), new JsonFields(row));
+            } catch (JSONException | IllegalArgumentException e) {
+                skipped++;
+            }
+            onRecord(progress);
+        }
+    }
+
+    private void importCsv(BufferedReader reader, DataExporter.ProgressListener progress) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.readRecord();
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().replace("\uFEFF", ""), i);
+        }
+        CsvFields fields = new CsvFields(columns);
+
+        List<String> record;
+        while ((record = csv.readRecord()) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                continue;
+            }
+            fields.record = record;
+            try {
+                addRecord(fields.text(DataExporter.FIELD_TYPE), fields);
+            } catch (IllegalArgumentException e) {
+                skipped++;
+            }
+            onRecord(progress);
+        }
+    }
+
+    // Buffers one record and writes the batch once it is full
+    private void addRecord(String type, Fields fields) {
+        if (DataExporter.TYPE_NOTE.equals(type)) {
+            notes.add(new Note(0, fields.text(DataExporter.FIELD_TITLE), fields.text(DataExporter.FIELD_BODY)));
+            if (notes.size() >= BATCH_SIZE) {
+                imported += dbHelper.insertNotes(notes, userId);
+                notes.clear();
+            }
+        } else if (DataExporter.TYPE_TASK.equals(type)) {
+            tasks.add(new Task(0, fields.text(DataExporter.FIELD_TITLE), fields.text(DataExporter.FIELD_BODY),
+                    fields.number(DataExporter.FIELD_DATE), fields.bool(DataExporter.FIELD_COMPLETED)));
+            if (tasks.size() >= BATCH_SIZE) {
+                imported += dbHelper.insertTasks(tasks, userId);
+                tasks.clear();
+            }
+        } else if (DataExporter.TYPE_LOCATION_TASK.equals(type)) {
+            locationTasks.add(new LocationTask(0, fields.text(DataExporter.FIELD_TITLE),
+                    fields.text(DataExporter.FIELD_BODY), fields.text(DataExporter.FIELD_ADDRESS),
+                    fields.decimal(DataExporter.FIELD_LATITUDE), fields.decimal(DataExporter.FIELD_LONGITUDE),
+                    (int) fields.number(DataExporter.FIELD_RADIUS), fields.bool(DataExporter.FIELD_NOTIFICATIONS),
+                    fields.number(DataExporter.FIELD_CREATED), userId));
+            if (locationTasks.size() >= BATCH_SIZE) {
+                imported += dbHelper.insertLocationTasks(locationTasks, userId);
+                locationTasks.clear();
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown record type " + type);
+        }
+    }
+
+    private void flush() {
+        if (!notes.isEmpty()) {
+            imported += dbHelper.insertNotes(notes, userId);
+            notes.clear();
+        }
+        if (!tasks.isEmpty()) {
+            imported += dbHelper.insertTasks(tasks, userId);
+            tasks.clear();
+        }
+        if (!locationTasks.isEmpty()) {
+            imported += dbHelper.insertLocationTasks(locationTasks, userId);
+            locationTasks.clear();
+        }
+    }
+
+    private void onRecord(DataExporter.ProgressListener progress) {
+        records++;
+        if (progress != null && records % DataExporter.PROGRESS_INTERVAL == 0) {
+            progress.onProgress(records, -1);
+        }
+    }
+
+    // Field access shared by the JSON and CSV readers; missing numbers read as 0
+    private interface Fields {
+        String text(String field);
+
+        long number(String field);
+
+        double decimal(String field);
+
+        boolean bool(String field);
+    }
+
+    private static class JsonFields implements Fields {
+        private final JSONObject row;
+
+        JsonFields(JSONObject row) {
+            this.row = row;
+        }
+
+        @Override
+        public String text(String field) {
+            return row.isNull(field) ? null : row.optString(field);
+        }
+
+        @Override
+        public long number(String field) {
+            return row.optLong(field);
+        }
+
+        @Override
+        public double decimal(String field) {
+            return row.optDouble(field, 0);
+        }
+
+        @Override
+        public boolean bool(String field) {
+            return row.optBoolean(field);
+        }
+    }
+
+    // Reads fields by header name, so columns may be reordered by a spreadsheet
+    private static class CsvFields implements Fields {
+        private final Map<String, Integer> columns;
+        List<String> record;
+
+        CsvFields(Map<String, Integer> columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        public String text(String field) {
+            Integer index = columns.get(field);
+            if (index == null || index >= record.size()) {
+                return null;
+            }
+            String value = record.get(index);
+            return value.isEmpty() ? null : value;
+        }
+
+        @Override
+        public long number(String field) {
+            String value = text(field);
+            return value == null ? 0 : Long.parseLong(value.trim());
+        }
+
+        @Override
+        public double decimal(String field) {
+            String value = text(field);
+            return value == null ? 0 : Double.parseDouble(value.trim());
+        }
+
+        @Override
+        public boolean bool(String field) {
+            String value = text(field);
+            return value != null && (value.trim().equals("1") || value.trim().equalsIgnoreCase("true"));
+        }
+    }
+
+    // RFC 4180 record reader; quoted fields may contain commas, doubled quotes and line breaks
+    static class CsvReader {
+        private final Reader reader;
+        private final StringBuilder field = new StringBuilder();
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        // Returns the next record, or null at the end of the input
+        List<String> readRecord() throws IOException {
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> record = new ArrayList<>();
+            boolean quoted = false;
+            field.setLength(0);
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted field");
+                    }
+                    if (c == '"') {
+                        c = reader.read();
+                        if (c == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            continue;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    record.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == -1) {
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+            record.add(field.toString());
+            return record;
+        }
+    }
+}
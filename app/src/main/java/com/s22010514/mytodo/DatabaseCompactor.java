@@ -0,0 +1,65 @@
+package com.s22010514.mytodo;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background clean-up of soft-deleted rows. Tombstones older than the undo window are purged in
+ * small batches, then free pages are handed back to the file system with incremental vacuum, so
+ * deleting stays a cheap UPDATE for the user and the database file doesn't keep growing.
+ */
+public class DatabaseCompactor {
+
+    private static final String TAG = "DatabaseCompactor";
+
+    // Pages released per run, 4 MB with the default page size
+    static final int MAX_VACUUM_PAGES = 1024;
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Low priority work, it shouldn't compete with list loads on the repository threads
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private DatabaseCompactor() {
+    }
+
+    // Runs one compaction per process, called when the app starts
+    public static void schedule(Context context) {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        DatabaseHelper dbHelper = DatabaseHelper.getInstance(context);
+        executor.execute(() -> {
+            try {
+                compact(dbHelper, System.currentTimeMillis());
+            } catch (Exception e) {
+                Log.e(TAG, "Compaction failed", e);
+            }
+        });
+    }
+
+    static void compact(DatabaseHelper dbHelper, long now) {
+        int purged = dbHelper.purgeDeletedRows(now - DatabaseHelper.TOMBSTONE_RETENTION_MS);
+
+        if (dbHelper.getAutoVacuumMode() != AUTO_VACUUM_INCREMENTAL) {
+            // Every file starts without auto vacuum and needs one full rewrite to switch modes,
+            // only worth it once there is space to give back
+            if (dbHelper.getFreePageCount() > 0) {
+                dbHelper.enableIncrementalVacuum();
+                Log.i(TAG, "Purged " + purged + " deleted rows, switched to incremental vacuum");
+            }
+            return;
+        }
+
+        long freePages = dbHelper.getFreePageCount();
+        if (freePages > 0) {
+            dbHelper.incrementalVacuum(MAX_VACUUM_PAGES);
+        }
+        Log.i(TAG, "Purged " + purged + " deleted rows, released " + Math.min(freePages, MAX_VACUUM_PAGES) + " pages");
+    }
+}
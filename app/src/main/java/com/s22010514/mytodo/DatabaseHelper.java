@@ -3,19 +3,27 @@ package com.s22010514.mytodo;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MergeCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "mytodo.db";
-    private static final int DATABASE_VERSION = 4; // Incremented for user separation feature
+    private static final int DATABASE_VERSION = 10; // Incremented for soft deletion
 
     private static final String NOTES_TABLE_NAME = "notes_table";
     public static final String COL_1 = "ID";
     public static final String COL_2 = "TITLE";
     public static final String COL_3 = "BODY";
     public static final String COL_4 = "USER_ID"; // Added user ID column
+    public static final String COL_5 = "DELETED_DATE"; // Set when deleted, the row is purged later
 
     private static final String TASKS_TABLE_NAME = "tasks_table";
     public static final String TASK_COL_1 = "ID";
@@ -24,6 +32,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String TASK_COL_4 = "DATE";
     public static final String TASK_COL_5 = "IS_COMPLETED";
     public static final String TASK_COL_6 = "USER_ID"; // Added user ID column
+    public static final String TASK_COL_7 = "DELETED_DATE"; // Set when deleted, the row is purged later
 
     // Location Tasks Table
     private static final String LOCATION_TASKS_TABLE_NAME = "location_tasks_table";
@@ -37,9 +46,129 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String LOC_TASK_COL_8 = "NOTIFICATION_ENABLED";
     public static final String LOC_TASK_COL_9 = "CREATED_DATE";
     public static final String LOC_TASK_COL_10 = "USER_ID"; // Added user ID column
+    public static final String LOC_TASK_COL_11 = "NOTIFICATION_TRIGGERED"; // Set while the user is inside the radius
+    public static final String LOC_TASK_COL_12 = "DELETED_DATE"; // Set when deleted, the row is purged later
+
+    // Per-user counters kept up to date by triggers, read by the AccountPage dashboard
+    private static final String USER_STATS_TABLE_NAME = "user_stats_table";
+    public static final String STATS_COL_1 = "USER_ID";
+    public static final String STATS_COL_2 = "TASK_COUNT";
+    public static final String STATS_COL_3 = "COMPLETED_TASK_COUNT";
+    public static final String STATS_COL_4 = "NOTE_COUNT";
+    public static final String STATS_COL_5 = "PLACE_COUNT";
+
+    // FTS4 shadow indexes over note and task text, filled by triggers on the data tables.
+    // External content tables, so the text itself is only stored once in the data tables
+    private static final String NOTES_FTS_TABLE_NAME = "notes_fts";
+    private static final String TASKS_FTS_TABLE_NAME = "tasks_fts";
+
+    // Geocoder results shared by all users, keyed by a normalised address or rounded coordinates
+    private static final String GEOCODE_CACHE_TABLE_NAME = "geocode_cache_table";
+    public static final String GEOCODE_COL_1 = "QUERY_KEY";
+    public static final String GEOCODE_COL_2 = "ADDRESS";
+    public static final String GEOCODE_COL_3 = "LATITUDE";
+    public static final String GEOCODE_COL_4 = "LONGITUDE";
+    public static final String GEOCODE_COL_5 = "CACHED_DATE";
+
+    // Oldest geocode entries beyond this many are dropped
+    static final int GEOCODE_CACHE_MAX_ENTRIES = 1000;
+
+    // Deleted rows stay as tombstones at least this long, so an undo can still bring them back
+    static final long TOMBSTONE_RETENTION_MS = 60 * 60 * 1000;
+    // Tombstones purged per transaction, so compaction never holds the write lock for long
+    static final int PURGE_BATCH_SIZE = 500;
+
+    // Number of tasks fetched per page by getTasksPage
+    public static final int TASK_PAGE_SIZE = 50;
+
+    // Number of hits fetched per page by searchNotes and searchTasks
+    public static final int SEARCH_PAGE_SIZE = 50;
+    // 1 on search hits whose title matches every word, which rank first
+    public static final String SEARCH_COL_TITLE_HIT = "TITLE_HIT";
+
+    // Characters of the body carried by note list rows, a little more than the three preview lines show
+    static final int NOTE_PREVIEW_LENGTH = 300;
+
+    // Columns read from search hits, the data table is joined as r
+    private static final String SEARCH_NOTE_COLUMNS = "r.ID, r.TITLE, substr(r.BODY, 1, " + NOTE_PREVIEW_LENGTH +
+            ") AS BODY, length(r.BODY) > " + NOTE_PREVIEW_LENGTH + " AS BODY_TRUNCATED";
+    private static final String SEARCH_TASK_COLUMNS = "r.ID, r.TITLE, r.DESCRIPTION, r.DATE, r.IS_COMPLETED";
+
+    // Every query and update of user rows only sees rows that aren't deleted
+    private static final String LIVE = " AND DELETED_DATE IS NULL";
+
+    // Read queries, kept here so the index test can check their query plans
+    static final String QUERY_ALL_NOTES = "SELECT * FROM " + NOTES_TABLE_NAME + " WHERE USER_ID = ?" + LIVE;
+    static final String QUERY_NOTE_BY_ID = "SELECT * FROM " + NOTES_TABLE_NAME + " WHERE ID = ? AND USER_ID = ?" + LIVE;
+    // The note list only reads the start of each body; QUERY_NOTE_BODY fetches the rest when a row is expanded
+    private static final String NOTE_PREVIEW_COLUMNS = "ID, TITLE, substr(BODY, 1, " + NOTE_PREVIEW_LENGTH + ") AS BODY, " +
+            "length(BODY) > " + NOTE_PREVIEW_LENGTH + " AS BODY_TRUNCATED";
+    // In ID order, which NotesPage relies on to insert changed notes; idx_notes_user gives it without a sort
+    static final String QUERY_NOTE_PREVIEWS = "SELECT " + NOTE_PREVIEW_COLUMNS + " FROM " + NOTES_TABLE_NAME +
+            " WHERE USER_ID = ?" + LIVE + " ORDER BY ID";
+    static final String QUERY_NOTE_PREVIEW_BY_ID = "SELECT " + NOTE_PREVIEW_COLUMNS + " FROM " + NOTES_TABLE_NAME +
+            " WHERE ID = ? AND USER_ID = ?" + LIVE;
+    static final String QUERY_NOTE_BODY = "SELECT BODY FROM " + NOTES_TABLE_NAME + " WHERE ID = ? AND USER_ID = ?" + LIVE;
+    static final String QUERY_TASK_BY_ID = "SELECT * FROM " + TASKS_TABLE_NAME + " WHERE ID = ? AND USER_ID = ?" + LIVE;
+    static final String QUERY_LOCATION_TASK_BY_ID = "SELECT * FROM " + LOCATION_TASKS_TABLE_NAME +
+            " WHERE ID = ? AND USER_ID = ?" + LIVE;
+    static final String QUERY_ALL_TASKS = "SELECT * FROM " + TASKS_TABLE_NAME +
+            " WHERE USER_ID = ?" + LIVE + " ORDER BY IS_COMPLETED ASC, DATE DESC";
+    static final String QUERY_TASKS_FIRST_PAGE = "SELECT ID, TITLE, DESCRIPTION, DATE, IS_COMPLETED FROM " +
+            TASKS_TABLE_NAME + " WHERE USER_ID = ?" + LIVE + " ORDER BY IS_COMPLETED ASC, DATE DESC, ID DESC";
+    // Keyset pages: the rest of the cursor's completion group, then the groups after it. Kept as two
+    // queries so each can seek on (USER_ID, IS_COMPLETED, DATE) instead of filtering from USER_ID onwards
+    static final String QUERY_TASKS_NEXT_PAGE = "SELECT ID, TITLE, DESCRIPTION, DATE, IS_COMPLETED FROM " +
+            TASKS_TABLE_NAME + " WHERE USER_ID = ?" + LIVE + " AND " +
+            "IS_COMPLETED = ? AND DATE <= ? AND (DATE < ? OR ID < ?) " +
+            "ORDER BY IS_COMPLETED ASC, DATE DESC, ID DESC";
+    static final String QUERY_TASKS_NEXT_GROUPS = "SELECT ID, TITLE, DESCRIPTION, DATE, IS_COMPLETED FROM " +
+            TASKS_TABLE_NAME + " WHERE USER_ID = ?" + LIVE + " AND IS_COMPLETED > ? " +
+            "ORDER BY IS_COMPLETED ASC, DATE DESC, ID DESC";
+    static final String QUERY_USER_STATISTICS = "SELECT TASK_COUNT, COMPLETED_TASK_COUNT, NOTE_COUNT, PLACE_COUNT FROM " +
+            USER_STATS_TABLE_NAME + " WHERE USER_ID = ?";
+    static final String QUERY_ALL_LOCATION_TASKS = "SELECT * FROM " + LOCATION_TASKS_TABLE_NAME +
+            " WHERE USER_ID = ?" + LIVE + " ORDER BY CREATED_DATE DESC";
+    static final String QUERY_MONITORED_LOCATION_TASKS = "SELECT ID, TITLE, LATITUDE, LONGITUDE, " +
+            "NOTIFICATION_RADIUS, NOTIFICATION_TRIGGERED FROM " + LOCATION_TASKS_TABLE_NAME +
+            " WHERE USER_ID = ? AND NOTIFICATION_ENABLED = 1" + LIVE;
+    // Due queue for reminders: both seek on (USER_ID, IS_COMPLETED, DATE) in idx_tasks_user_completed_date,
+    // so finding the next due date doesn't depend on how many tasks have dates
+    static final String QUERY_NEXT_DUE_TASK = "SELECT MIN(DATE) FROM " + TASKS_TABLE_NAME +
+            " WHERE USER_ID = ? AND IS_COMPLETED = 0" + LIVE + " AND DATE > ?";
+    static final String QUERY_DUE_TASKS = "SELECT ID, TITLE FROM " + TASKS_TABLE_NAME +
+            " WHERE USER_ID = ? AND IS_COMPLETED = 0" + LIVE + " AND DATE > ? AND DATE <= ? ORDER BY DATE";
+    static final String QUERY_GEOCODE_CACHE = "SELECT ADDRESS, LATITUDE, LONGITUDE FROM " + GEOCODE_CACHE_TABLE_NAME +
+            " WHERE QUERY_KEY = ?";
 
-    public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // Full-text searches, keyset paged: title hits rank first, then the other hits, each newest first.
+    // The FTS index returns docids in descending order below the cursor, so no page sorts or skips hits
+    static final String QUERY_SEARCH_NOTES_TITLE_HITS = searchSql(NOTES_FTS_TABLE_NAME, NOTES_TABLE_NAME,
+            SEARCH_NOTE_COLUMNS, true);
+    static final String QUERY_SEARCH_NOTES_OTHER_HITS = searchSql(NOTES_FTS_TABLE_NAME, NOTES_TABLE_NAME,
+            SEARCH_NOTE_COLUMNS, false);
+    static final String QUERY_SEARCH_TASKS_TITLE_HITS = searchSql(TASKS_FTS_TABLE_NAME, TASKS_TABLE_NAME,
+            SEARCH_TASK_COLUMNS, true);
+    static final String QUERY_SEARCH_TASKS_OTHER_HITS = searchSql(TASKS_FTS_TABLE_NAME, TASKS_TABLE_NAME,
+            SEARCH_TASK_COLUMNS, false);
+
+    private final DataChangeBus changeBus = DataChangeBus.getInstance();
+
+    // One process-wide instance so the UI and the location service share a connection pool
+    private static DatabaseHelper instance;
+
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext(), DATABASE_NAME);
+        }
+        return instance;
+    }
+
+    // Used directly by tests, a null name gives an in-memory database
+    DatabaseHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        // WAL lets reads run on pooled connections while a write is in progress
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -49,7 +178,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 "ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 "TITLE TEXT, " +
                 "BODY TEXT, " +
-                "USER_ID TEXT NOT NULL)");
+                "USER_ID TEXT NOT NULL, " +
+                "DELETED_DATE INTEGER)");
 
         // Create tasks table with USER_ID
         db.execSQL("CREATE TABLE " + TASKS_TABLE_NAME + " (" +
@@ -58,7 +188,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 "DESCRIPTION TEXT, " +
                 "DATE INTEGER, " +
                 "IS_COMPLETED INTEGER DEFAULT 0, " +
-                "USER_ID TEXT NOT NULL)");
+                "USER_ID TEXT NOT NULL, " +
+                "DELETED_DATE INTEGER)");
 
         // Create location tasks table with USER_ID
         db.execSQL("CREATE TABLE " + LOCATION_TASKS_TABLE_NAME + " (" +
@@ -71,7 +202,156 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 "NOTIFICATION_RADIUS INTEGER, " +
                 "NOTIFICATION_ENABLED INTEGER, " +
                 "CREATED_DATE INTEGER, " +
-                "USER_ID TEXT NOT NULL)");
+                "USER_ID TEXT NOT NULL, " +
+                "NOTIFICATION_TRIGGERED INTEGER NOT NULL DEFAULT 0, " +
+                "DELETED_DATE INTEGER)");
+
+        createIndexes(db);
+        createUserStatistics(db);
+        createSoftDeleteStatistics(db);
+        createSearchIndexes(db);
+        createGeocodeCache(db);
+        createTombstoneIndexes(db);
+    }
+
+    // Composite indexes matching the WHERE and ORDER BY of each USER_ID scoped query
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_notes_user ON " + NOTES_TABLE_NAME + " (USER_ID)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_tasks_user_completed_date ON " + TASKS_TABLE_NAME +
+                " (USER_ID, IS_COMPLETED, DATE DESC, ID DESC)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_location_tasks_user_created ON " + LOCATION_TASKS_TABLE_NAME +
+                " (USER_ID, CREATED_DATE DESC)");
+        // Partial index so the location service only touches places with notifications on
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_location_tasks_monitored ON " + LOCATION_TASKS_TABLE_NAME +
+                " (USER_ID) WHERE NOTIFICATION_ENABLED = 1");
+    }
+
+    // Counter table plus the triggers that keep it in step with the data tables
+    private void createUserStatistics(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + USER_STATS_TABLE_NAME + " (" +
+                "USER_ID TEXT PRIMARY KEY, " +
+                "TASK_COUNT INTEGER NOT NULL DEFAULT 0, " +
+                "COMPLETED_TASK_COUNT INTEGER NOT NULL DEFAULT 0, " +
+                "NOTE_COUNT INTEGER NOT NULL DEFAULT 0, " +
+                "PLACE_COUNT INTEGER NOT NULL DEFAULT 0)");
+
+        String ensureRow = "INSERT OR IGNORE INTO " + USER_STATS_TABLE_NAME + " (USER_ID) VALUES (NEW.USER_ID); ";
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_tasks_stats_insert AFTER INSERT ON " + TASKS_TABLE_NAME +
+                " BEGIN " + ensureRow +
+                "UPDATE " + USER_STATS_TABLE_NAME + " SET TASK_COUNT = TASK_COUNT + 1, " +
+                "COMPLETED_TASK_COUNT = COMPLETED_TASK_COUNT + IFNULL(NEW.IS_COMPLETED, 0) " +
+                "WHERE USER_ID = NEW.USER_ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_tasks_stats_delete AFTER DELETE ON " + TASKS_TABLE_NAME +
+                " WHEN OLD.DELETED_DATE IS NULL BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET TASK_COUNT = TASK_COUNT - 1, " +
+                "COMPLETED_TASK_COUNT = COMPLETED_TASK_COUNT - IFNULL(OLD.IS_COMPLETED, 0) " +
+                "WHERE USER_ID = OLD.USER_ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_tasks_stats_complete AFTER UPDATE OF IS_COMPLETED ON " +
+                TASKS_TABLE_NAME + " BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET " +
+                "COMPLETED_TASK_COUNT = COMPLETED_TASK_COUNT + IFNULL(NEW.IS_COMPLETED, 0) - IFNULL(OLD.IS_COMPLETED, 0) " +
+                "WHERE USER_ID = NEW.USER_ID; END");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_notes_stats_insert AFTER INSERT ON " + NOTES_TABLE_NAME +
+                " BEGIN " + ensureRow +
+                "UPDATE " + USER_STATS_TABLE_NAME + " SET NOTE_COUNT = NOTE_COUNT + 1 WHERE USER_ID = NEW.USER_ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_notes_stats_delete AFTER DELETE ON " + NOTES_TABLE_NAME +
+                " WHEN OLD.DELETED_DATE IS NULL BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET NOTE_COUNT = NOTE_COUNT - 1 WHERE USER_ID = OLD.USER_ID; END");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_location_tasks_stats_insert AFTER INSERT ON " + LOCATION_TASKS_TABLE_NAME +
+                " BEGIN " + ensureRow +
+                "UPDATE " + USER_STATS_TABLE_NAME + " SET PLACE_COUNT = PLACE_COUNT + 1 WHERE USER_ID = NEW.USER_ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_location_tasks_stats_delete AFTER DELETE ON " + LOCATION_TASKS_TABLE_NAME +
+                " WHEN OLD.DELETED_DATE IS NULL BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET PLACE_COUNT = PLACE_COUNT - 1 WHERE USER_ID = OLD.USER_ID; END");
+    }
+
+    // Soft deletes and undos move the counters like a delete or an insert would.
+    // Purging a tombstone later doesn't touch them, the delete triggers above skip tombstones
+    private void createSoftDeleteStatistics(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_tasks_stats_soft_delete AFTER UPDATE OF DELETED_DATE ON " +
+                TASKS_TABLE_NAME + " WHEN OLD.DELETED_DATE IS NULL AND NEW.DELETED_DATE IS NOT NULL " +
+                "BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET TASK_COUNT = TASK_COUNT - 1, " +
+                "COMPLETED_TASK_COUNT = COMPLETED_TASK_COUNT - IFNULL(OLD.IS_COMPLETED, 0) " +
+                "WHERE USER_ID = OLD.USER_ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_tasks_stats_restore AFTER UPDATE OF DELETED_DATE ON " +
+                TASKS_TABLE_NAME + " WHEN OLD.DELETED_DATE IS NOT NULL AND NEW.DELETED_DATE IS NULL " +
+                "BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET TASK_COUNT = TASK_COUNT + 1, " +
+                "COMPLETED_TASK_COUNT = COMPLETED_TASK_COUNT + IFNULL(NEW.IS_COMPLETED, 0) " +
+                "WHERE USER_ID = NEW.USER_ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_notes_stats_soft_delete AFTER UPDATE OF DELETED_DATE ON " +
+                NOTES_TABLE_NAME + " WHEN OLD.DELETED_DATE IS NULL AND NEW.DELETED_DATE IS NOT NULL " +
+                "BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET NOTE_COUNT = NOTE_COUNT - 1 WHERE USER_ID = OLD.USER_ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_notes_stats_restore AFTER UPDATE OF DELETED_DATE ON " +
+                NOTES_TABLE_NAME + " WHEN OLD.DELETED_DATE IS NOT NULL AND NEW.DELETED_DATE IS NULL " +
+                "BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET NOTE_COUNT = NOTE_COUNT + 1 WHERE USER_ID = NEW.USER_ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_location_tasks_stats_soft_delete AFTER UPDATE OF DELETED_DATE ON " +
+                LOCATION_TASKS_TABLE_NAME + " WHEN OLD.DELETED_DATE IS NULL AND NEW.DELETED_DATE IS NOT NULL " +
+                "BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET PLACE_COUNT = PLACE_COUNT - 1 WHERE USER_ID = OLD.USER_ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_location_tasks_stats_restore AFTER UPDATE OF DELETED_DATE ON " +
+                LOCATION_TASKS_TABLE_NAME + " WHEN OLD.DELETED_DATE IS NOT NULL AND NEW.DELETED_DATE IS NULL " +
+                "BEGIN UPDATE " + USER_STATS_TABLE_NAME + " SET PLACE_COUNT = PLACE_COUNT + 1 WHERE USER_ID = NEW.USER_ID; END");
+    }
+
+    // Partial indexes holding only the tombstones, so compaction finds them without a table scan
+    private void createTombstoneIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_notes_deleted ON " + NOTES_TABLE_NAME +
+                " (DELETED_DATE) WHERE DELETED_DATE IS NOT NULL");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_tasks_deleted ON " + TASKS_TABLE_NAME +
+                " (DELETED_DATE) WHERE DELETED_DATE IS NOT NULL");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_location_tasks_deleted ON " + LOCATION_TASKS_TABLE_NAME +
+                " (DELETED_DATE) WHERE DELETED_DATE IS NOT NULL");
+    }
+
+    // FTS tables plus the triggers that keep them in step with the data tables
+    private void createSearchIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + NOTES_FTS_TABLE_NAME +
+                " USING fts4(content=\"" + NOTES_TABLE_NAME + "\", TITLE, BODY)");
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TASKS_FTS_TABLE_NAME +
+                " USING fts4(content=\"" + TASKS_TABLE_NAME + "\", TITLE, DESCRIPTION)");
+
+        // Old text has to leave the index before the row changes, new text goes in afterwards
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_notes_fts_insert AFTER INSERT ON " + NOTES_TABLE_NAME +
+                " BEGIN INSERT INTO " + NOTES_FTS_TABLE_NAME + " (docid, TITLE, BODY) " +
+                "VALUES (NEW.ID, NEW.TITLE, NEW.BODY); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_notes_fts_before_update BEFORE UPDATE OF TITLE, BODY ON " +
+                NOTES_TABLE_NAME + " BEGIN DELETE FROM " + NOTES_FTS_TABLE_NAME + " WHERE docid = OLD.ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_notes_fts_after_update AFTER UPDATE OF TITLE, BODY ON " +
+                NOTES_TABLE_NAME + " BEGIN INSERT INTO " + NOTES_FTS_TABLE_NAME + " (docid, TITLE, BODY) " +
+                "VALUES (NEW.ID, NEW.TITLE, NEW.BODY); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_notes_fts_delete BEFORE DELETE ON " + NOTES_TABLE_NAME +
+                " BEGIN DELETE FROM " + NOTES_FTS_TABLE_NAME + " WHERE docid = OLD.ID; END");
+
+        // Only text edits touch the task index, toggling completion doesn't
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_tasks_fts_insert AFTER INSERT ON " + TASKS_TABLE_NAME +
+                " BEGIN INSERT INTO " + TASKS_FTS_TABLE_NAME + " (docid, TITLE, DESCRIPTION) " +
+                "VALUES (NEW.ID, NEW.TITLE, NEW.DESCRIPTION); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_tasks_fts_before_update BEFORE UPDATE OF TITLE, DESCRIPTION ON " +
+                TASKS_TABLE_NAME + " BEGIN DELETE FROM " + TASKS_FTS_TABLE_NAME + " WHERE docid = OLD.ID; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_tasks_fts_after_update AFTER UPDATE OF TITLE, DESCRIPTION ON " +
+                TASKS_TABLE_NAME + " BEGIN INSERT INTO " + TASKS_FTS_TABLE_NAME + " (docid, TITLE, DESCRIPTION) " +
+                "VALUES (NEW.ID, NEW.TITLE, NEW.DESCRIPTION); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_tasks_fts_delete BEFORE DELETE ON " + TASKS_TABLE_NAME +
+                " BEGIN DELETE FROM " + TASKS_FTS_TABLE_NAME + " WHERE docid = OLD.ID; END");
+    }
+
+    private void createGeocodeCache(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + GEOCODE_CACHE_TABLE_NAME + " (" +
+                "QUERY_KEY TEXT PRIMARY KEY, " +
+                "ADDRESS TEXT, " +
+                "LATITUDE REAL, " +
+                "LONGITUDE REAL, " +
+                "CACHED_DATE INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_geocode_cache_date ON " + GEOCODE_CACHE_TABLE_NAME + " (CACHED_DATE)");
+    }
+
+    // Fills the counter table from the existing rows, used once when upgrading
+    private void backfillUserStatistics(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + USER_STATS_TABLE_NAME);
+        db.execSQL("INSERT INTO " + USER_STATS_TABLE_NAME + " (USER_ID, TASK_COUNT, COMPLETED_TASK_COUNT, NOTE_COUNT, PLACE_COUNT) " +
+                "SELECT USER_ID, SUM(TASKS), SUM(COMPLETED), SUM(NOTES), SUM(PLACES) FROM (" +
+                "SELECT USER_ID, 1 AS TASKS, IFNULL(IS_COMPLETED, 0) AS COMPLETED, 0 AS NOTES, 0 AS PLACES FROM " + TASKS_TABLE_NAME +
+                " UNION ALL SELECT USER_ID, 0, 0, 1, 0 FROM " + NOTES_TABLE_NAME +
+                " UNION ALL SELECT USER_ID, 0, 0, 0, 1 FROM " + LOCATION_TASKS_TABLE_NAME +
+                ") GROUP BY USER_ID");
     }
 
     @Override
@@ -99,6 +379,156 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             db.execSQL("ALTER TABLE " + TASKS_TABLE_NAME + " ADD COLUMN USER_ID TEXT DEFAULT ''");
             db.execSQL("ALTER TABLE " + LOCATION_TASKS_TABLE_NAME + " ADD COLUMN USER_ID TEXT DEFAULT ''");
         }
+        if (oldVersion < 5) {
+            // Add USER_ID indexes for version 5
+            createIndexes(db);
+        }
+        if (oldVersion < 6) {
+            // Add statistics counters for version 6
+            createUserStatistics(db);
+            backfillUserStatistics(db);
+        }
+        if (oldVersion < 7) {
+            // Add persisted geofence state and the monitored places index for version 7
+            db.execSQL("ALTER TABLE " + LOCATION_TASKS_TABLE_NAME +
+                    " ADD COLUMN NOTIFICATION_TRIGGERED INTEGER NOT NULL DEFAULT 0");
+            createIndexes(db);
+        }
+        if (oldVersion < 8) {
+            // Add full-text search for version 8, indexing the existing rows once
+            createSearchIndexes(db);
+            db.execSQL("INSERT INTO " + NOTES_FTS_TABLE_NAME + " (" + NOTES_FTS_TABLE_NAME + ") VALUES ('rebuild')");
+            db.execSQL("INSERT INTO " + TASKS_FTS_TABLE_NAME + " (" + TASKS_FTS_TABLE_NAME + ") VALUES ('rebuild')");
+        }
+        if (oldVersion < 9) {
+            // Add the geocode cache for version 9
+            createGeocodeCache(db);
+        }
+        if (oldVersion < 10) {
+            // Add soft deletion for version 10; the stats delete triggers are recreated to skip tombstones
+            db.execSQL("ALTER TABLE " + NOTES_TABLE_NAME + " ADD COLUMN DELETED_DATE INTEGER");
+            db.execSQL("ALTER TABLE " + TASKS_TABLE_NAME + " ADD COLUMN DELETED_DATE INTEGER");
+            db.execSQL("ALTER TABLE " + LOCATION_TASKS_TABLE_NAME + " ADD COLUMN DELETED_DATE INTEGER");
+            db.execSQL("DROP TRIGGER IF EXISTS trg_tasks_stats_delete");
+            db.execSQL("DROP TRIGGER IF EXISTS trg_notes_stats_delete");
+            db.execSQL("DROP TRIGGER IF EXISTS trg_location_tasks_stats_delete");
+            createUserStatistics(db);
+            createSoftDeleteStatistics(db);
+            createTombstoneIndexes(db);
+        }
+    }
+
+    // REMINDERS - due date of the next open task after the given time, or -1 when there is none
+    public long getNextDueTaskDate(String userId, long after) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_NEXT_DUE_TASK, new String[]{userId, String.valueOf(after)});
+        try {
+            // MIN over no rows is a single NULL row
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+            return -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Open tasks that fell due in (after, upTo], soonest first
+    public Cursor getDueTasks(String userId, long after, long upTo) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_DUE_TASKS, new String[]{userId, String.valueOf(after), String.valueOf(upTo)});
+    }
+
+    // STATISTICS - single primary key lookup on the trigger-maintained counters
+    public UserStatistics getUserStatistics(String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_USER_STATISTICS, new String[]{userId});
+        try {
+            if (cursor.moveToFirst()) {
+                return new UserStatistics(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2), cursor.getInt(3));
+            }
+            // No row yet means the user hasn't created anything
+            return new UserStatistics(0, 0, 0, 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Hits matching every word of the query below the docid cursor; the other hits leave out the title hits
+    private static String searchSql(String ftsTable, String table, String columns, boolean titleHits) {
+        return "SELECT " + columns + ", " + (titleHits ? 1 : 0) + " AS " + SEARCH_COL_TITLE_HIT +
+                " FROM " + ftsTable + " JOIN " + table + " r ON r.ID = " + ftsTable + ".docid" +
+                " WHERE " + ftsTable + " MATCH ? AND " + ftsTable + ".docid < ?" +
+                (titleHits ? "" : " AND " + ftsTable + ".docid NOT IN (SELECT docid FROM " + ftsTable +
+                        " WHERE " + ftsTable + " MATCH ?)") +
+                " AND r.USER_ID = ? AND r.DELETED_DATE IS NULL ORDER BY " + ftsTable + ".docid DESC";
+    }
+
+    // SEARCH - keyset pages of ranked FTS hits, null input or input without any words matches nothing.
+    // Pass true and Long.MAX_VALUE for the first page, otherwise the TITLE_HIT and ID of the last hit loaded
+    public Cursor searchNotes(String query, String userId, boolean afterTitleHit, long afterId, int limit) {
+        return search(QUERY_SEARCH_NOTES_TITLE_HITS, QUERY_SEARCH_NOTES_OTHER_HITS,
+                query, userId, afterTitleHit, afterId, limit);
+    }
+
+    public Cursor searchTasks(String query, String userId, boolean afterTitleHit, long afterId, int limit) {
+        return search(QUERY_SEARCH_TASKS_TITLE_HITS, QUERY_SEARCH_TASKS_OTHER_HITS,
+                query, userId, afterTitleHit, afterId, limit);
+    }
+
+    private Cursor search(String titleHitsSql, String otherHitsSql, String query, String userId,
+                          boolean afterTitleHit, long afterId, int limit) {
+        String matchQuery = toMatchQuery(query, null);
+        if (matchQuery == null) {
+            return null;
+        }
+        String titleMatchQuery = toMatchQuery(query, "TITLE");
+        SQLiteDatabase db = this.getReadableDatabase();
+        if (!afterTitleHit) {
+            return db.rawQuery(otherHitsSql + " LIMIT " + limit,
+                    new String[]{matchQuery, String.valueOf(afterId), titleMatchQuery, userId});
+        }
+
+        Cursor titleHits = db.rawQuery(titleHitsSql + " LIMIT " + limit,
+                new String[]{titleMatchQuery, String.valueOf(afterId), userId});
+        int remaining = limit - titleHits.getCount();
+        if (remaining <= 0) {
+            return titleHits;
+        }
+
+        // The title hits ran out, carry on with the other hits from the top
+        Cursor otherHits = db.rawQuery(otherHitsSql + " LIMIT " + remaining,
+                new String[]{matchQuery, String.valueOf(Long.MAX_VALUE), titleMatchQuery, userId});
+        return new MergeCursor(new Cursor[]{titleHits, otherHits});
+    }
+
+    /**
+     * Turns typed text into an FTS MATCH expression: every word is required and matched as a prefix,
+     * so results update while a word is still being typed. Quotes, operators and other punctuation
+     * are dropped so user input can never be a malformed query. A column limits the terms to that column.
+     */
+    static String toMatchQuery(String query, String column) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                if (column != null) {
+                    match.append(column).append(':');
+                }
+                match.append(word).append('*');
+                word.setLength(0);
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
     }
 
     // NOTES METHODS - Updated with user filtering
@@ -109,18 +539,57 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         contentValues.put(COL_3, body);
         contentValues.put(COL_4, userId);
         long result = db.insert(NOTES_TABLE_NAME, null, contentValues);
+        if (result != -1) {
+            changeBus.publish(DataChangeBus.TABLE_NOTES, DataChangeBus.CHANGE_INSERT, (int) result);
+        }
         return result != -1;
     }
 
     public Cursor getAllNotes(String userId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        String query = "SELECT * FROM " + NOTES_TABLE_NAME + " WHERE USER_ID = ?";
-        return db.rawQuery(query, new String[]{userId});
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_ALL_NOTES, new String[]{userId});
+    }
+
+    public Cursor getNoteById(int id, String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_NOTE_BY_ID, new String[]{String.valueOf(id), userId});
+    }
+
+    // Same rows as getAllNotes with the body cut to NOTE_PREVIEW_LENGTH, for the note list
+    public Cursor getNotePreviews(String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_NOTE_PREVIEWS, new String[]{userId});
+    }
+
+    public Cursor getNotePreviewById(int id, String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_NOTE_PREVIEW_BY_ID, new String[]{String.valueOf(id), userId});
+    }
+
+    // Full body of one note, or null when the note doesn't exist
+    public String getNoteBody(int id, String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_NOTE_BODY, new String[]{String.valueOf(id), userId});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
     }
 
+    public int getNoteCount(String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, NOTES_TABLE_NAME, "USER_ID = ?" + LIVE, new String[]{userId});
+    }
+
+    // Soft delete: the row becomes a tombstone until restoreNotesByIds or purgeDeletedRows
     public boolean deleteNoteById(String id, String userId) {
         SQLiteDatabase db = this.getWritableDatabase();
-        int result = db.delete(NOTES_TABLE_NAME, "ID = ? AND USER_ID = ?", new String[]{id, userId});
+        int result = db.update(NOTES_TABLE_NAME, deletedValues(COL_5), "ID = ? AND USER_ID = ?" + LIVE,
+                              new String[]{id, userId});
+        if (result > 0) {
+            changeBus.publish(DataChangeBus.TABLE_NOTES, DataChangeBus.CHANGE_DELETE, Integer.parseInt(id));
+        }
         return result > 0;
     }
 
@@ -129,8 +598,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         ContentValues contentValues = new ContentValues();
         contentValues.put(COL_2, title);
         contentValues.put(COL_3, body);
-        int result = db.update(NOTES_TABLE_NAME, contentValues, "ID = ? AND USER_ID = ?",
+        int result = db.update(NOTES_TABLE_NAME, contentValues, "ID = ? AND USER_ID = ?" + LIVE,
                               new String[]{String.valueOf(id), userId});
+        if (result > 0) {
+            changeBus.publish(DataChangeBus.TABLE_NOTES, DataChangeBus.CHANGE_UPDATE, id);
+        }
         return result > 0;
     }
 
@@ -144,13 +616,51 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         contentValues.put(TASK_COL_5, 0); // Default to not completed
         contentValues.put(TASK_COL_6, userId);
         long result = db.insert(TASKS_TABLE_NAME, null, contentValues);
+        if (result != -1) {
+            changeBus.publish(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_INSERT, (int) result);
+        }
         return result != -1;
     }
 
     public Cursor getAllTasks(String userId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        String query = "SELECT * FROM " + TASKS_TABLE_NAME + " WHERE USER_ID = ? ORDER BY IS_COMPLETED ASC, DATE DESC";
-        return db.rawQuery(query, new String[]{userId});
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_ALL_TASKS, new String[]{userId});
+    }
+
+    // Keyset-paged task query in (IS_COMPLETED ASC, DATE DESC, ID DESC) order.
+    // Pass null for afterTask to get the first page, otherwise the last task of the previous page.
+    public Cursor getTasksPage(String userId, Task afterTask, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        String limitClause = " LIMIT " + limit;
+
+        if (afterTask == null) {
+            return db.rawQuery(QUERY_TASKS_FIRST_PAGE + limitClause, new String[]{userId});
+        }
+
+        String completed = afterTask.isCompleted() ? "1" : "0";
+        String date = String.valueOf(afterTask.getDateInMillis());
+        String id = String.valueOf(afterTask.getId());
+        Cursor sameGroup = db.rawQuery(QUERY_TASKS_NEXT_PAGE + limitClause,
+                new String[]{userId, completed, date, date, id});
+        int remaining = limit - sameGroup.getCount();
+        if (remaining <= 0 || afterTask.isCompleted()) {
+            return sameGroup;
+        }
+
+        // The open tasks ran out, carry on with the completed ones
+        Cursor nextGroups = db.rawQuery(QUERY_TASKS_NEXT_GROUPS + " LIMIT " + remaining,
+                new String[]{userId, completed});
+        return new MergeCursor(new Cursor[]{sameGroup, nextGroups});
+    }
+
+    public Cursor getTaskById(int id, String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_TASK_BY_ID, new String[]{String.valueOf(id), userId});
+    }
+
+    public int getTaskCount(String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, TASKS_TABLE_NAME, "USER_ID = ?" + LIVE, new String[]{userId});
     }
 
     public boolean updateTaskById(int id, String title, String description, long date, String userId) {
@@ -159,8 +669,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         contentValues.put(TASK_COL_2, title);
         contentValues.put(TASK_COL_3, description);
         contentValues.put(TASK_COL_4, date);
-        int result = db.update(TASKS_TABLE_NAME, contentValues, "ID = ? AND USER_ID = ?",
+        int result = db.update(TASKS_TABLE_NAME, contentValues, "ID = ? AND USER_ID = ?" + LIVE,
                               new String[]{String.valueOf(id), userId});
+        if (result > 0) {
+            changeBus.publish(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_UPDATE, id);
+        }
         return result > 0;
     }
 
@@ -168,18 +681,282 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues contentValues = new ContentValues();
         contentValues.put(TASK_COL_5, isCompleted ? 1 : 0);
-        int result = db.update(TASKS_TABLE_NAME, contentValues, "ID = ? AND USER_ID = ?",
+        int result = db.update(TASKS_TABLE_NAME, contentValues, "ID = ? AND USER_ID = ?" + LIVE,
                               new String[]{String.valueOf(id), userId});
+        if (result > 0) {
+            changeBus.publish(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_UPDATE, id);
+        }
         return result > 0;
     }
 
+    // Soft delete: the row becomes a tombstone until restoreTasksByIds or purgeDeletedRows
     public boolean deleteTaskById(int id, String userId) {
         SQLiteDatabase db = this.getWritableDatabase();
-        int result = db.delete(TASKS_TABLE_NAME, "ID = ? AND USER_ID = ?",
+        int result = db.update(TASKS_TABLE_NAME, deletedValues(TASK_COL_7), "ID = ? AND USER_ID = ?" + LIVE,
                               new String[]{String.valueOf(id), userId});
+        if (result > 0) {
+            changeBus.publish(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_DELETE, id);
+        }
         return result > 0;
     }
 
+    // BULK METHODS - one transaction and one prepared statement per call, so a batch costs a single commit.
+    // Each returns how many rows it changed; change events are published after the commit.
+    public int insertNotes(Collection<Note> notes, String userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        List<Integer> insertedIds = new ArrayList<>();
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + NOTES_TABLE_NAME +
+                " (TITLE, BODY, USER_ID) VALUES (?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (Note note : notes) {
+                bindText(statement, 1, note.getTitle());
+                bindText(statement, 2, note.getBody());
+                statement.bindString(3, userId);
+                long id = statement.executeInsert();
+                if (id != -1) {
+                    insertedIds.add((int) id);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        changeBus.publishAll(DataChangeBus.TABLE_NOTES, DataChangeBus.CHANGE_INSERT, insertedIds);
+        return insertedIds.size();
+    }
+
+    public int deleteNotesByIds(Collection<Integer> ids, String userId) {
+        List<Integer> deletedIds = executeForEachId(softDeleteSql(NOTES_TABLE_NAME), ids, userId);
+        changeBus.publishAll(DataChangeBus.TABLE_NOTES, DataChangeBus.CHANGE_DELETE, deletedIds);
+        return deletedIds.size();
+    }
+
+    // Undoes a soft delete; restored rows are published as inserts so lists pick them up
+    public int restoreNotesByIds(Collection<Integer> ids, String userId) {
+        List<Integer> restoredIds = executeForEachId(restoreSql(NOTES_TABLE_NAME), ids, userId);
+        changeBus.publishAll(DataChangeBus.TABLE_NOTES, DataChangeBus.CHANGE_INSERT, restoredIds);
+        return restoredIds.size();
+    }
+
+    public int insertTasks(Collection<Task> tasks, String userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        List<Integer> insertedIds = new ArrayList<>();
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + TASKS_TABLE_NAME +
+                " (TITLE, DESCRIPTION, DATE, IS_COMPLETED, USER_ID) VALUES (?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (Task task : tasks) {
+                bindText(statement, 1, task.getTitle());
+                bindText(statement, 2, task.getDescription());
+                statement.bindLong(3, task.getDateInMillis());
+                statement.bindLong(4, task.isCompleted() ? 1 : 0);
+                statement.bindString(5, userId);
+                long id = statement.executeInsert();
+                if (id != -1) {
+                    insertedIds.add((int) id);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        changeBus.publishAll(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_INSERT, insertedIds);
+        return insertedIds.size();
+    }
+
+    public int updateTasksCompletionStatus(Collection<Integer> ids, boolean isCompleted, String userId) {
+        List<Integer> updatedIds = executeForEachId("UPDATE " + TASKS_TABLE_NAME +
+                " SET IS_COMPLETED = " + (isCompleted ? 1 : 0) + " WHERE ID = ? AND USER_ID = ?" + LIVE, ids, userId);
+        changeBus.publishAll(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_UPDATE, updatedIds);
+        return updatedIds.size();
+    }
+
+    // Completes every open task of the user in one statement
+    public int markAllTasksCompleted(String userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(TASK_COL_5, 1);
+        int result = db.update(TASKS_TABLE_NAME, contentValues, "USER_ID = ? AND IS_COMPLETED = 0" + LIVE,
+                              new String[]{userId});
+        if (result > 0) {
+            // The changed IDs aren't known here, so list pages fall back to a full reload
+            changeBus.publish(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_UPDATE, DataChangeBus.UNKNOWN_ROW);
+        }
+        return result;
+    }
+
+    public int deleteTasksByIds(Collection<Integer> ids, String userId) {
+        List<Integer> deletedIds = executeForEachId(softDeleteSql(TASKS_TABLE_NAME), ids, userId);
+        changeBus.publishAll(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_DELETE, deletedIds);
+        return deletedIds.size();
+    }
+
+    public int restoreTasksByIds(Collection<Integer> ids, String userId) {
+        List<Integer> restoredIds = executeForEachId(restoreSql(TASKS_TABLE_NAME), ids, userId);
+        changeBus.publishAll(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_INSERT, restoredIds);
+        return restoredIds.size();
+    }
+
+    public int insertLocationTasks(Collection<LocationTask> locationTasks, String userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        List<Integer> insertedIds = new ArrayList<>();
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + LOCATION_TASKS_TABLE_NAME +
+                " (TITLE, DESCRIPTION, LOCATION_ADDRESS, LATITUDE, LONGITUDE, NOTIFICATION_RADIUS, " +
+                "NOTIFICATION_ENABLED, CREATED_DATE, USER_ID) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            for (LocationTask locationTask : locationTasks) {
+                bindText(statement, 1, locationTask.getTitle());
+                bindText(statement, 2, locationTask.getDescription());
+                bindText(statement, 3, locationTask.getLocationAddress());
+                statement.bindDouble(4, locationTask.getLatitude());
+                statement.bindDouble(5, locationTask.getLongitude());
+                statement.bindLong(6, locationTask.getNotificationRadius());
+                statement.bindLong(7, locationTask.isNotificationEnabled() ? 1 : 0);
+                statement.bindLong(8, locationTask.getCreatedDate() > 0 ? locationTask.getCreatedDate() : now);
+                statement.bindString(9, userId);
+                long id = statement.executeInsert();
+                if (id != -1) {
+                    insertedIds.add((int) id);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        changeBus.publishAll(DataChangeBus.TABLE_LOCATION_TASKS, DataChangeBus.CHANGE_INSERT, insertedIds);
+        return insertedIds.size();
+    }
+
+    public int deleteLocationTasksByIds(Collection<Integer> ids, String userId) {
+        List<Integer> deletedIds = executeForEachId(softDeleteSql(LOCATION_TASKS_TABLE_NAME), ids, userId);
+        changeBus.publishAll(DataChangeBus.TABLE_LOCATION_TASKS, DataChangeBus.CHANGE_DELETE, deletedIds);
+        return deletedIds.size();
+    }
+
+    public int restoreLocationTasksByIds(Collection<Integer> ids, String userId) {
+        List<Integer> restoredIds = executeForEachId(restoreSql(LOCATION_TASKS_TABLE_NAME), ids, userId);
+        changeBus.publishAll(DataChangeBus.TABLE_LOCATION_TASKS, DataChangeBus.CHANGE_INSERT, restoredIds);
+        return restoredIds.size();
+    }
+
+    private static ContentValues deletedValues(String column) {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(column, System.currentTimeMillis());
+        return contentValues;
+    }
+
+    private static String softDeleteSql(String table) {
+        return "UPDATE " + table + " SET DELETED_DATE = " + System.currentTimeMillis() +
+                " WHERE ID = ? AND USER_ID = ?" + LIVE;
+    }
+
+    private static String restoreSql(String table) {
+        return "UPDATE " + table + " SET DELETED_DATE = NULL WHERE ID = ? AND USER_ID = ? AND DELETED_DATE IS NOT NULL";
+    }
+
+    // COMPACTION - permanently removes tombstones deleted before the given time, one batch per
+    // transaction so UI writes can get in between. Returns the number of rows removed
+    public int purgeDeletedRows(long deletedBefore) {
+        int purged = 0;
+        for (String table : new String[]{NOTES_TABLE_NAME, TASKS_TABLE_NAME, LOCATION_TASKS_TABLE_NAME}) {
+            int batch;
+            do {
+                batch = purgeBatch(table, deletedBefore);
+                purged += batch;
+            } while (batch == PURGE_BATCH_SIZE);
+        }
+        return purged;
+    }
+
+    private int purgeBatch(String table, long deletedBefore) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(purgeSql(table));
+        db.beginTransaction();
+        try {
+            statement.bindLong(1, deletedBefore);
+            int deleted = statement.executeUpdateDelete();
+            db.setTransactionSuccessful();
+            return deleted;
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    // Oldest tombstones first, found through the partial DELETED_DATE index
+    static String purgeSql(String table) {
+        return "DELETE FROM " + table + " WHERE ID IN (SELECT ID FROM " + table +
+                " WHERE DELETED_DATE IS NOT NULL AND DELETED_DATE < ? LIMIT " + PURGE_BATCH_SIZE + ")";
+    }
+
+    // 0 = none, 1 = full, 2 = incremental
+    public int getAutoVacuumMode() {
+        return (int) DatabaseUtils.longForQuery(this.getReadableDatabase(), "PRAGMA auto_vacuum", null);
+    }
+
+    public long getFreePageCount() {
+        return DatabaseUtils.longForQuery(this.getReadableDatabase(), "PRAGMA freelist_count", null);
+    }
+
+    // Rewrites the file once so it can use incremental vacuum; the mode can't be set on creation
+    // because Android has already created android_metadata by the time onCreate runs
+    public void enableIncrementalVacuum() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.execSQL("VACUUM");
+    }
+
+    // Returns up to maxPages free pages to the file system
+    public void incrementalVacuum(int maxPages) {
+        // The pragma frees one page per step, a cursor steps it to completion where execSQL wouldn't
+        Cursor cursor = this.getWritableDatabase().rawQuery("PRAGMA incremental_vacuum(" + maxPages + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                // Nothing to read
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Runs an update or delete whose arguments are (ID, USER_ID) once per ID in a single transaction,
+    // returning the IDs of the rows it changed
+    private List<Integer> executeForEachId(String sql, Collection<Integer> ids, String userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        List<Integer> changedIds = new ArrayList<>();
+        SQLiteStatement statement = db.compileStatement(sql);
+        db.beginTransaction();
+        try {
+            statement.bindString(2, userId);
+            for (int id : ids) {
+                statement.bindLong(1, id);
+                if (statement.executeUpdateDelete() > 0) {
+                    changedIds.add(id);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        return changedIds;
+    }
+
+    // SQLiteStatement rejects null strings, so bind them as SQL NULL
+    private static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
     // LOCATION TASKS METHODS - Updated with user filtering
     public boolean insertLocationTask(String title, String description, String locationAddress,
                                     double latitude, double longitude, int notificationRadius,
@@ -196,19 +973,51 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         contentValues.put(LOC_TASK_COL_9, System.currentTimeMillis());
         contentValues.put(LOC_TASK_COL_10, userId);
         long result = db.insert(LOCATION_TASKS_TABLE_NAME, null, contentValues);
+        if (result != -1) {
+            changeBus.publish(DataChangeBus.TABLE_LOCATION_TASKS, DataChangeBus.CHANGE_INSERT, (int) result);
+        }
         return result != -1;
     }
 
     public Cursor getAllLocationTasks(String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_ALL_LOCATION_TASKS, new String[]{userId});
+    }
+
+    public Cursor getLocationTaskById(int id, String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_LOCATION_TASK_BY_ID, new String[]{String.valueOf(id), userId});
+    }
+
+    public Cursor getMonitoredLocationTasks(String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_MONITORED_LOCATION_TASKS, new String[]{userId});
+    }
+
+    // Saves whether a place's notification has fired, so a service restart doesn't alert again.
+    // Not published to the change bus because no list shows this column
+    public boolean setLocationTaskTriggered(int id, boolean triggered, String userId) {
         SQLiteDatabase db = this.getWritableDatabase();
-        String query = "SELECT * FROM " + LOCATION_TASKS_TABLE_NAME + " WHERE USER_ID = ? ORDER BY CREATED_DATE DESC";
-        return db.rawQuery(query, new String[]{userId});
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(LOC_TASK_COL_11, triggered ? 1 : 0);
+        int result = db.update(LOCATION_TASKS_TABLE_NAME, contentValues, "ID = ? AND USER_ID = ?" + LIVE,
+                              new String[]{String.valueOf(id), userId});
+        return result > 0;
     }
 
+    public int getLocationTaskCount(String userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, LOCATION_TASKS_TABLE_NAME, "USER_ID = ?" + LIVE, new String[]{userId});
+    }
+
+    // Soft delete: the row becomes a tombstone until restoreLocationTasksByIds or purgeDeletedRows
     public boolean deleteLocationTaskById(int id, String userId) {
         SQLiteDatabase db = this.getWritableDatabase();
-        int result = db.delete(LOCATION_TASKS_TABLE_NAME, "ID = ? AND USER_ID = ?",
+        int result = db.update(LOCATION_TASKS_TABLE_NAME, deletedValues(LOC_TASK_COL_12), "ID = ? AND USER_ID = ?" + LIVE,
                               new String[]{String.valueOf(id), userId});
+        if (result > 0) {
+            changeBus.publish(DataChangeBus.TABLE_LOCATION_TASKS, DataChangeBus.CHANGE_DELETE, id);
+        }
         return result > 0;
     }
 
@@ -224,8 +1033,41 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         contentValues.put(LOC_TASK_COL_6, longitude);
         contentValues.put(LOC_TASK_COL_7, notificationRadius);
         contentValues.put(LOC_TASK_COL_8, notificationEnabled ? 1 : 0);
-        int result = db.update(LOCATION_TASKS_TABLE_NAME, contentValues, "ID = ? AND USER_ID = ?",
+        // An edited place can move or shrink, so it starts untriggered again
+        contentValues.put(LOC_TASK_COL_11, 0);
+        int result = db.update(LOCATION_TASKS_TABLE_NAME, contentValues, "ID = ? AND USER_ID = ?" + LIVE,
                               new String[]{String.valueOf(id), userId});
+        if (result > 0) {
+            changeBus.publish(DataChangeBus.TABLE_LOCATION_TASKS, DataChangeBus.CHANGE_UPDATE, id);
+        }
         return result > 0;
     }
+
+    // GEOCODE CACHE METHODS
+    public Cursor getCachedGeocode(String queryKey) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(QUERY_GEOCODE_CACHE, new String[]{queryKey});
+    }
+
+    // Stores or refreshes one lookup result, then trims the cache back to GEOCODE_CACHE_MAX_ENTRIES
+    public boolean putCachedGeocode(String queryKey, String address, double latitude, double longitude) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(GEOCODE_COL_1, queryKey);
+        contentValues.put(GEOCODE_COL_2, address);
+        contentValues.put(GEOCODE_COL_3, latitude);
+        contentValues.put(GEOCODE_COL_4, longitude);
+        contentValues.put(GEOCODE_COL_5, System.currentTimeMillis());
+        db.beginTransaction();
+        try {
+            long result = db.insertWithOnConflict(GEOCODE_CACHE_TABLE_NAME, null, contentValues,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+            db.execSQL("DELETE FROM " + GEOCODE_CACHE_TABLE_NAME + " WHERE CACHED_DATE <= (SELECT CACHED_DATE FROM " +
+                    GEOCODE_CACHE_TABLE_NAME + " ORDER BY CACHED_DATE DESC LIMIT 1 OFFSET " + GEOCODE_CACHE_MAX_ENTRIES + ")");
+            db.setTransactionSuccessful();
+            return result != -1;
+        } finally {
+            db.endTransaction();
+        }
+    }
 }
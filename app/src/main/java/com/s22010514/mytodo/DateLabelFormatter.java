@@ -0,0 +1,94 @@
+package com.s22010514.mytodo;
+
+import android.util.SparseArray;
+
+import java.util.TimeZone;
+
+/**
+ * Shared date labels for task rows and the date pickers. Dates are reduced to a local day
+ * number with integer arithmetic, today's day number is worked out once per day, and each
+ * day's "d/M/yyyy" string is built once and cached, so binding a row allocates nothing.
+ * Main thread only, like the views that show the labels.
+ */
+public final class DateLabelFormatter {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    // Bounds the cache to a couple of years of distinct dates
+    private static final int MAX_CACHED_DAYS = 1024;
+
+    private static final SparseArray<String> dayLabels = new SparseArray<>();
+
+    // Cached because TimeZone.getDefault() returns a new copy each call
+    private static TimeZone timeZone;
+    private static int today;
+    // First millisecond of tomorrow; once reached, today and the zone are worked out again
+    private static long nextDayStartMs = Long.MIN_VALUE;
+
+    private DateLabelFormatter() {
+    }
+
+    // "Today", "Tomorrow", "Yesterday" or d/M/yyyy
+    public static String formatRelative(long dateInMillis) {
+        refreshToday();
+        int day = dayNumber(dateInMillis);
+        if (day == today) {
+            return "Today";
+        } else if (day == today + 1) {
+            return "Tomorrow";
+        } else if (day == today - 1) {
+            return "Yesterday";
+        }
+        return dayLabel(day);
+    }
+
+    // Always d/M/yyyy
+    public static String format(long dateInMillis) {
+        refreshToday();
+        return dayLabel(dayNumber(dateInMillis));
+    }
+
+    private static void refreshToday() {
+        long now = System.currentTimeMillis();
+        if (now < nextDayStartMs) {
+            return;
+        }
+        // A zone change is picked up at the next midnight; cached labels don't depend on the zone
+        timeZone = TimeZone.getDefault();
+        today = dayNumber(now);
+        // Use the offset in force around midnight, which differs from now's on a DST change day
+        long localMidnight = (today + 1L) * DAY_MS;
+        nextDayStartMs = localMidnight - timeZone.getOffset(localMidnight - timeZone.getOffset(now));
+    }
+
+    // Days since 1970-01-01 in the local zone
+    private static int dayNumber(long millis) {
+        return (int) Math.floorDiv(millis + timeZone.getOffset(millis), DAY_MS);
+    }
+
+    private static String dayLabel(int day) {
+        String label = dayLabels.get(day);
+        if (label == null) {
+            if (dayLabels.size() >= MAX_CACHED_DAYS) {
+                dayLabels.clear();
+            }
+            label = buildLabel(day);
+            dayLabels.put(day, label);
+        }
+        return label;
+    }
+
+    // Civil date from a day number (Howard Hinnant's days_from_civil inverse), formatted as d/M/yyyy
+    private static String buildLabel(int day) {
+        int z = day + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int dayOfMonth = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return dayOfMonth + "/" + month + "/" + year;
+    }
+}
@@ -1,23 +1,18 @@
 package com.s22010514.mytodo;
 
+import android.content.Context;
 import android.util.Log;
 import org.json.JSONObject;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.io.File;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import android.os.Handler;
 import android.os.Looper;
 
 /**
  * Alternative email service using EmailJS
  * This provides more reliable email delivery than Firebase Auth
- * Uses modern threading instead of deprecated AsyncTask
+ * Requests go through a shared MailDispatcher, which queues them on disk and retries failed sends
  */
 public class EmailService {
 
@@ -27,133 +22,115 @@ public class EmailService {
     private static final String EMAILJS_PUBLIC_KEY = "BmASaUJh2XtpiY6Ll";
     private static final String EMAILJS_URL = "https://api.emailjs.com/api/v1.0/email/send";
 
-    private final ExecutorService executor;
+    // Dispatcher settings: two sends at once, retries from 2 s up to 5 min, reset links expire after a day
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final long BASE_BACKOFF_MS = 2000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    private static final long MAX_AGE_MS = 24 * 60 * 60 * 1000;
+
+    // How long a caller waits for delivery before being told the email is still queued; the send keeps retrying after that
+    private static final long CALLBACK_TIMEOUT_MS = 30000;
+
+    private static MailDispatcher dispatcher;
+
     private final Handler mainHandler;
 
-    public EmailService() {
-        executor = Executors.newSingleThreadExecutor();
+    public EmailService(Context context) {
         mainHandler = new Handler(Looper.getMainLooper());
+        getDispatcher(context);
     }
 
-    /**
-     * Send password reset email using EmailJS service
-     */
-    public void sendPasswordResetEmail(String userEmail, String resetLink, EmailCallback callback) {
-        Log.d(TAG, "=== EMAILJS DEBUG START ===");
-        Log.d(TAG, "Sending reset email to: " + userEmail);
-        Log.d(TAG, "Using service ID: " + EMAILJS_SERVICE_ID);
-        Log.d(TAG, "Using template ID: " + EMAILJS_TEMPLATE_ID);
-
-        executor.execute(() -> {
-            String errorMessage = "";
-            boolean success = false;
-
+    // One dispatcher per process; creating it picks up emails left in the queue by an earlier run
+    private static synchronized MailDispatcher getDispatcher(Context context) {
+        if (dispatcher == null) {
+            Handler handler = new Handler(Looper.getMainLooper());
             try {
-                // Create JSON payload
-                JSONObject emailData = new JSONObject();
-                emailData.put("service_id", EMAILJS_SERVICE_ID);
-                emailData.put("template_id", EMAILJS_TEMPLATE_ID);
-                emailData.put("user_id", EMAILJS_PUBLIC_KEY); // Correct field name
-
-                // Match variables with your EmailJS template
-                JSONObject templateParams = new JSONObject();
-                templateParams.put("email", userEmail);  // matches {{email}}
-                templateParams.put("link", resetLink);   // matches {{link}}
-                templateParams.put("app_name", "MyToDo App");
-                templateParams.put("from_name", "MyToDo Support");
-                templateParams.put("message", "Click the link below to reset your password:");
-
-                emailData.put("template_params", templateParams);
-
-                Log.d(TAG, "JSON payload: " + emailData.toString());
-
-                // Send HTTP request
-                String response = sendHttpRequest(emailData.toString());
-                success = (response != null && response.contains("OK"));
-
-                if (!success) {
-                    errorMessage = (response != null) ? response : "Unknown error";
-                }
-
-            } catch (Exception e) {
-                Log.e(TAG, "Email preparation failed: " + e.getMessage());
-                errorMessage = "Failed to prepare email: " + e.getMessage();
-                success = false;
+                dispatcher = new MailDispatcher(new File(context.getApplicationContext().getFilesDir(), "email_queue"),
+                        new URL(EMAILJS_URL), MAX_IN_FLIGHT, BASE_BACKOFF_MS, MAX_BACKOFF_MS, MAX_AGE_MS,
+                        handler::post);
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(e);
             }
+            dispatcher.resumePending();
+        }
+        return dispatcher;
+    }
 
-            // Return result on main thread
-            final boolean finalSuccess = success;
-            final String finalError = errorMessage;
-            mainHandler.post(() -> {
-                if (callback != null) {
-                    if (finalSuccess) {
-                        callback.onSuccess();
-                    } else {
-                        callback.onFailure(finalError);
-                    }
-                }
-            });
-
-            Log.d(TAG, "=== EMAILJS DEBUG END ===");
-        });
+    // Resumes sending emails queued before the app was last closed
+    public static void resumePendingEmails(Context context) {
+        getDispatcher(context);
     }
 
     /**
-     * Sends POST request to EmailJS API
-     * Returns response body or null if network error
+     * Send password reset email using EmailJS service
      */
-    private String sendHttpRequest(String jsonData) {
-        HttpURLConnection connection = null;
+    public void sendPasswordResetEmail(String userEmail, String resetLink, EmailCallback callback) {
+        Log.d(TAG, "Queueing reset email to: " + userEmail);
+
+        String payload;
         try {
-            Log.d(TAG, "Connecting to EmailJS API...");
-            URL url = new URL(EMAILJS_URL);
-            connection = (HttpURLConnection) url.openConnection();
-
-            // Set request method and headers
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestProperty("User-Agent", "MyToDo-Android-App");
-            connection.setDoOutput(true);
-            connection.setConnectTimeout(30000);
-            connection.setReadTimeout(30000);
-
-            // Send JSON data
-            try (OutputStream os = connection.getOutputStream()) {
-                byte[] input = jsonData.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-                os.flush();
+            // Create JSON payload
+            JSONObject emailData = new JSONObject();
+            emailData.put("service_id", EMAILJS_SERVICE_ID);
+            emailData.put("template_id", EMAILJS_TEMPLATE_ID);
+            emailData.put("user_id", EMAILJS_PUBLIC_KEY); // Correct field name
+
+            // Match variables with your EmailJS template
+            JSONObject templateParams = new JSONObject();
+            templateParams.put("email", userEmail);  // matches {{email}}
+            templateParams.put("link", resetLink);   // matches {{link}}
+            templateParams.put("app_name", "MyToDo App");
+            templateParams.put("from_name", "MyToDo Support");
+            templateParams.put("message", "Click the link below to reset your password:");
+
+            emailData.put("template_params", templateParams);
+            payload = emailData.toString();
+        } catch (Exception e) {
+            Log.e(TAG, "Email preparation failed: " + e.getMessage());
+            if (callback != null) {
+                callback.onFailure("Failed to prepare email: " + e.getMessage());
             }
+            return;
+        }
 
-            // Get response
-            int responseCode = connection.getResponseCode();
-            Log.d(TAG, "EmailJS response code: " + responseCode);
-
-            BufferedReader reader;
-            if (responseCode >= 200 && responseCode < 300) {
-                reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
-            } else {
-                reader = new BufferedReader(new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8));
+        // The callback fires once: on delivery, on rejection, or when the timeout runs out first.
+        // A timeout isn't a failure, the email can still go out later, so it gets its own outcome
+        boolean[] answered = new boolean[1];
+        Runnable timeout = () -> {
+            if (!answered[0]) {
+                answered[0] = true;
+                if (callback != null) {
+                    callback.onStillQueued();
+                }
             }
-
-            StringBuilder response = new StringBuilder();
-            String responseLine;
-            while ((responseLine = reader.readLine()) != null) {
-                response.append(responseLine.trim());
+        };
+        mainHandler.postDelayed(timeout, CALLBACK_TIMEOUT_MS);
+
+        dispatcher.enqueue(payload, new MailDispatcher.Listener() {
+            @Override
+            public void onDelivered() {
+                Log.d(TAG, "✅ Reset email delivered to: " + userEmail);
+                mainHandler.removeCallbacks(timeout);
+                if (!answered[0]) {
+                    answered[0] = true;
+                    if (callback != null) {
+                        callback.onSuccess();
+                    }
+                }
             }
-            reader.close();
 
-            Log.d(TAG, "EmailJS response: " + response.toString());
-            return response.toString();
-
-        } catch (IOException e) {
-            Log.e(TAG, "❌ Network error: " + e.getMessage());
-            return null;
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
+            @Override
+            public void onFailed(String error) {
+                Log.e(TAG, "❌ Reset email failed: " + error);
+                mainHandler.removeCallbacks(timeout);
+                if (!answered[0]) {
+                    answered[0] = true;
+                    if (callback != null) {
+                        callback.onFailure(error);
+                    }
+                }
             }
-        }
+        });
     }
 
     /**
@@ -170,5 +147,8 @@ public class EmailService {
     public interface EmailCallback {
         void onSuccess();
         void onFailure(String error);
+
+        // Not delivered within the timeout but still retrying; callers must not send another email
+        void onStillQueued();
     }
 }
@@ -111,7 +111,7 @@ public class ForgotPassword extends AppCompatActivity {
         checkUserRegistrationOptional(email);
 
         // Try EmailJS service first (more reliable)
-        EmailService emailService = new EmailService();
+        EmailService emailService = new EmailService(this);
         String resetLink = "https://mytodoapp.page.link/reset?email=" + email;
 
         android.util.Log.d("ForgotPassword", "🚀 Attempting EmailJS for: " + email);
@@ -136,6 +136,17 @@ public class ForgotPassword extends AppCompatActivity {
                 android.util.Log.d("ForgotPassword", "🔄 Trying Firebase Auth as fallback...");
                 sendFirebasePasswordReset(email);
             }
+
+            @Override
+            public void onStillQueued() {
+                // The EmailJS send is still retrying, a Firebase fallback now would mean two reset emails
+                android.util.Log.w("ForgotPassword", "⏳ EmailJS still queued for: " + email);
+                if (resetPasswordBtn != null) {
+                    resetPasswordBtn.setEnabled(true);
+                    resetPasswordBtn.setText("🔄 Send Reset Link");
+                }
+                showEmailQueuedDialog(email);
+            }
         });
     }
 
@@ -201,6 +212,18 @@ public class ForgotPassword extends AppCompatActivity {
                 .show();
     }
 
+    private void showEmailQueuedDialog(String email) {
+        new AlertDialog.Builder(this)
+                .setTitle("⏳ Reset Email On Its Way")
+                .setMessage("Your connection is slow, so the reset email to\n📧 " + email +
+                           "\nhasn't gone out yet.\n\n" +
+                           "It will be sent automatically as soon as the connection allows, " +
+                           "there's no need to request another one.")
+                .setPositiveButton("🏠 Back to Login", (dialog, which) -> goBackToLogin())
+                .setNegativeButton("✅ Got It", null)
+                .show();
+    }
+
     private void showReliableSuccessDialog(String email) {
         String emailProvider = email.substring(email.indexOf("@") + 1).toLowerCase();
         String specificInstructions = getEmailProviderInstructions(emailProvider);
@@ -0,0 +1,222 @@
+package com.s22010514.mytodo;
+
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Grid of fixed-size latitude/longitude cells over the monitored location tasks.
+ * Each task is filed under every cell its radius overlaps, so a location fix only
+ * has to check the tasks in its own cell plus the ones that are currently triggered.
+ */
+public class GeofenceIndex {
+
+    // About 1.1 km north-south, so a 500 m radius covers at most 2x2 cells
+    static final double CELL_SIZE_DEGREES = 0.01;
+
+    // How far past the radius the user has to move before a task can trigger again
+    static final int EXIT_MARGIN_METERS = 50;
+
+    // Rings of cells searched for the nearest place, about 11 km; anything further counts as that far
+    static final int MAX_SEARCH_RINGS = 10;
+
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+    private static final double METERS_PER_DEGREE_LATITUDE = 111320.0;
+
+    public interface GeofenceListener {
+        void onEnter(LocationTask task, float distanceInMeters);
+
+        void onExit(LocationTask task);
+    }
+
+    // A monitored task and whether its notification has fired since the user last left it
+    public static class Geofence {
+        final LocationTask task;
+        boolean triggered;
+
+        public Geofence(LocationTask task, boolean triggered) {
+            this.task = task;
+            this.triggered = triggered;
+        }
+    }
+
+    private final Map<Integer, Geofence> geofences = new HashMap<>();
+    private final LongSparseArray<ArrayList<Geofence>> cells = new LongSparseArray<>();
+    private final ArrayList<Geofence> triggeredGeofences = new ArrayList<>();
+
+    // Adds or replaces a task, keeping the triggered state it was saved with
+    public void add(Geofence geofence) {
+        LocationTask task = geofence.task;
+        remove(task.getId());
+
+        geofences.put(task.getId(), geofence);
+        if (geofence.triggered) {
+            triggeredGeofences.add(geofence);
+        }
+
+        int minLat = latitudeCell(task.getLatitude() - latitudeDelta(task));
+        int maxLat = latitudeCell(task.getLatitude() + latitudeDelta(task));
+        int minLng = longitudeCell(task.getLongitude() - longitudeDelta(task));
+        int maxLng = longitudeCell(task.getLongitude() + longitudeDelta(task));
+        for (int lat = minLat; lat <= maxLat; lat++) {
+            for (int lng = minLng; lng <= maxLng; lng++) {
+                long key = cellKey(lat, lng);
+                ArrayList<Geofence> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<>();
+                    cells.put(key, cell);
+                }
+                cell.add(geofence);
+            }
+        }
+    }
+
+    public void remove(int taskId) {
+        Geofence geofence = geofences.remove(taskId);
+        if (geofence == null) {
+            return;
+        }
+        triggeredGeofences.remove(geofence);
+
+        LocationTask task = geofence.task;
+        int minLat = latitudeCell(task.getLatitude() - latitudeDelta(task));
+        int maxLat = latitudeCell(task.getLatitude() + latitudeDelta(task));
+        int minLng = longitudeCell(task.getLongitude() - longitudeDelta(task));
+        int maxLng = longitudeCell(task.getLongitude() + longitudeDelta(task));
+        for (int lat = minLat; lat <= maxLat; lat++) {
+            for (int lng = minLng; lng <= maxLng; lng++) {
+                long key = cellKey(lat, lng);
+                ArrayList<Geofence> cell = cells.get(key);
+                if (cell != null) {
+                    cell.remove(geofence);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        geofences.clear();
+        cells.clear();
+        triggeredGeofences.clear();
+    }
+
+    public boolean isEmpty() {
+        return geofences.isEmpty();
+    }
+
+    /**
+     * Checks a location fix against the tasks near it and reports newly entered ones.
+     * Runs on every fix, so it must not allocate: no iterators, boxing or result arrays.
+     */
+    public void check(double latitude, double longitude, String userId, GeofenceListener listener) {
+        // Re-arm triggered tasks once the user is clearly outside them, wherever they are now
+        for (int i = triggeredGeofences.size() - 1; i >= 0; i--) {
+            Geofence geofence = triggeredGeofences.get(i);
+            LocationTask task = geofence.task;
+            double distance = distanceInMeters(latitude, longitude, task.getLatitude(), task.getLongitude());
+            if (distance > task.getNotificationRadius() + EXIT_MARGIN_METERS) {
+                geofence.triggered = false;
+                triggeredGeofences.remove(i);
+                listener.onExit(task);
+            }
+        }
+
+        ArrayList<Geofence> cell = cells.get(cellKey(latitudeCell(latitude), longitudeCell(longitude)));
+        if (cell == null) {
+            return;
+        }
+        for (int i = 0; i < cell.size(); i++) {
+            Geofence geofence = cell.get(i);
+            LocationTask task = geofence.task;
+            if (geofence.triggered || !userId.equals(task.getUserId())) {
+                continue;
+            }
+            double distance = distanceInMeters(latitude, longitude, task.getLatitude(), task.getLongitude());
+            if (distance <= task.getNotificationRadius()) {
+                geofence.triggered = true;
+                triggeredGeofences.add(geofence);
+                listener.onEnter(task, (float) distance);
+            }
+        }
+    }
+
+    /**
+     * Distance from a fix to the edge of the nearest untriggered place, 0 when inside one.
+     * Searches rings of cells outwards and stops once a ring can't hold anything closer;
+     * when nothing is found the search distance is returned as a lower bound.
+     */
+    public double nearestEdgeDistance(double latitude, double longitude, String userId) {
+        int centerLat = latitudeCell(latitude);
+        int centerLng = longitudeCell(longitude);
+        // Shorter side of a cell at this latitude, so the ring bound below stays conservative
+        double cellMeters = CELL_SIZE_DEGREES * METERS_PER_DEGREE_LATITUDE
+                * Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ring <= MAX_SEARCH_RINGS; ring++) {
+            // Every cell in this ring is at least ring - 1 cells away from the fix
+            if ((ring - 1) * cellMeters > nearest) {
+                break;
+            }
+            for (int dLat = -ring; dLat <= ring; dLat++) {
+                // Inner rows only need the two cells on the ring's left and right edges
+                int step = (dLat == -ring || dLat == ring) ? 1 : Math.max(1, 2 * ring);
+                for (int dLng = -ring; dLng <= ring; dLng += step) {
+                    ArrayList<Geofence> cell = cells.get(cellKey(centerLat + dLat, centerLng + dLng));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < cell.size(); i++) {
+                        Geofence geofence = cell.get(i);
+                        LocationTask task = geofence.task;
+                        if (geofence.triggered || !userId.equals(task.getUserId())) {
+                            continue;
+                        }
+                        double edge = distanceInMeters(latitude, longitude, task.getLatitude(), task.getLongitude())
+                                - task.getNotificationRadius();
+                        nearest = Math.min(nearest, Math.max(0, edge));
+                    }
+                }
+            }
+        }
+        return Math.min(nearest, MAX_SEARCH_RINGS * cellMeters);
+    }
+
+    // Haversine distance; unlike Location.distanceBetween it needs no result array or cache object
+    static double distanceInMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLng = Math.sin(dLng / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    private static double latitudeDelta(LocationTask task) {
+        return (task.getNotificationRadius() + EXIT_MARGIN_METERS) / METERS_PER_DEGREE_LATITUDE;
+    }
+
+    private static double longitudeDelta(LocationTask task) {
+        // Degrees of longitude shrink towards the poles; clamp so the box stays finite there
+        double cosLat = Math.max(0.01, Math.cos(Math.toRadians(task.getLatitude())));
+        return (task.getNotificationRadius() + EXIT_MARGIN_METERS) / (METERS_PER_DEGREE_LATITUDE * cosLat);
+    }
+
+    private static int latitudeCell(double latitude) {
+        return (int) Math.floor(latitude / CELL_SIZE_DEGREES);
+    }
+
+    private static int longitudeCell(double longitude) {
+        return (int) Math.floor(longitude / CELL_SIZE_DEGREES);
+    }
+
+    private static long cellKey(int latitudeCell, int longitudeCell) {
+        return ((long) latitudeCell << 32) | (longitudeCell & 0xffffffffL);
+    }
+}
@@ -26,6 +26,9 @@ public class HomePage extends AppCompatActivity {
         // Initialize Firebase Auth
         mAuth = FirebaseAuth.getInstance();
 
+        // Arm reminders for whoever just signed in
+        ReminderScheduler.reschedule(this);
+
         // Initialize CardView variables locally since they're only used in onCreate
         CardView addTaskCard = findViewById(R.id.addTaskCard);
         CardView taskListCard = findViewById(R.id.taskListCard);
@@ -131,6 +134,7 @@ public class HomePage extends AppCompatActivity {
 
         // Sign out from Firebase
         mAuth.signOut();
+        ReminderScheduler.cancel(this);
 
         // Show logout confirmation message
         Toast.makeText(this, "Logged out successfully", Toast.LENGTH_SHORT).show();
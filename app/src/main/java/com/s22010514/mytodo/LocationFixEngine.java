@@ -0,0 +1,212 @@
+package com.s22010514.mytodo;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gets one location fix for a screen that needs "where am I now". A recent enough last known
+ * fix is used straight away; otherwise GPS and network race and the first fix within
+ * ACCURACY_THRESHOLD_METERS wins. If none is accurate enough by TIMEOUT_MS the best fix seen so
+ * far is reported instead. Listeners are always removed when the request finishes or is cancelled.
+ * Main thread only.
+ */
+public class LocationFixEngine {
+
+    private static final String TAG = "LocationFixEngine";
+
+    // A fix this accurate ends the request
+    static final float ACCURACY_THRESHOLD_METERS = 50f;
+    // Last known fixes older than this aren't used on their own
+    static final long MAX_LAST_KNOWN_AGE_MS = 2 * 60 * 1000;
+    static final long TIMEOUT_MS = 30000;
+    // Fastest update rate asked of each provider while racing
+    private static final long UPDATE_INTERVAL_MS = 1000;
+
+    public static final String SOURCE_LAST_KNOWN = "last known";
+
+    /**
+     * Outcome of one request. location is null when no fix arrived before the timeout.
+     * timeToFixMs is measured from start() to the reported fix.
+     */
+    public static class Fix {
+        public final Location location;
+        public final boolean accurate;
+        public final String source;
+        public final long timeToFixMs;
+        public final int updatesReceived;
+
+        Fix(Location location, boolean accurate, String source, long timeToFixMs, int updatesReceived) {
+            this.location = location;
+            this.accurate = accurate;
+            this.source = source;
+            this.timeToFixMs = timeToFixMs;
+            this.updatesReceived = updatesReceived;
+        }
+    }
+
+    private final LocationManager locationManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable timeout = this::onTimeout;
+    private final LocationListener listener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            onFix(location);
+        }
+
+        // Needed below API 29
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {}
+
+        @Override
+        public void onProviderEnabled(String provider) {}
+
+        @Override
+        public void onProviderDisabled(String provider) {}
+    };
+
+    private TodoRepository.Callback<Fix> callback;
+    private boolean running;
+    private long startTimeMs;
+    private int updatesReceived;
+    private Location bestFix;
+    private String bestSource;
+
+    public LocationFixEngine(LocationManager locationManager) {
+        this.locationManager = locationManager;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Providers this engine can use right now, empty when location is switched off
+    public List<String> getEnabledProviders() {
+        List<String> providers = new ArrayList<>(2);
+        if (locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
+            providers.add(LocationManager.GPS_PROVIDER);
+        }
+        if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+            providers.add(LocationManager.NETWORK_PROVIDER);
+        }
+        return providers;
+    }
+
+    /**
+     * Starts a request, cancelling any request still running. The callback runs once, possibly
+     * before this returns when a recent last known fix is good enough.
+     * Throws SecurityException without the location permission.
+     */
+    public void start(TodoRepository.Callback<Fix> callback) {
+        cancel();
+        this.callback = callback;
+        running = true;
+        startTimeMs = SystemClock.elapsedRealtime();
+        updatesReceived = 0;
+        bestFix = null;
+        bestSource = null;
+
+        List<String> providers = getEnabledProviders();
+        for (String provider : providers) {
+            Location lastKnown = locationManager.getLastKnownLocation(provider);
+            if (lastKnown != null && ageMs(lastKnown) <= MAX_LAST_KNOWN_AGE_MS && isBetter(lastKnown)) {
+                bestFix = lastKnown;
+                bestSource = SOURCE_LAST_KNOWN;
+            }
+        }
+        if (isAccurate(bestFix)) {
+            finish(true);
+            return;
+        }
+
+        try {
+            for (String provider : providers) {
+                locationManager.requestLocationUpdates(provider, UPDATE_INTERVAL_MS, 0, listener, Looper.getMainLooper());
+            }
+        } catch (RuntimeException e) {
+            cancel();
+            throw e;
+        }
+        handler.postDelayed(timeout, TIMEOUT_MS);
+    }
+
+    // Stops the request without calling back, e.g. when the screen closes
+    public void cancel() {
+        handler.removeCallbacks(timeout);
+        locationManager.removeUpdates(listener);
+        running = false;
+        callback = null;
+    }
+
+    private void onFix(Location location) {
+        if (!running) {
+            return;
+        }
+        updatesReceived++;
+        if (isBetter(location)) {
+            bestFix = location;
+            bestSource = location.getProvider();
+        }
+        if (isAccurate(location)) {
+            finish(true);
+        }
+    }
+
+    private void onTimeout() {
+        if (running) {
+            finish(false);
+        }
+    }
+
+    private void finish(boolean accurate) {
+        TodoRepository.Callback<Fix> resultCallback = callback;
+        Fix fix = new Fix(bestFix, accurate, bestSource, SystemClock.elapsedRealtime() - startTimeMs, updatesReceived);
+        cancel();
+
+        // One line per request, enough to tune the threshold and timeout from logcat
+        if (fix.location != null) {
+            Log.i(TAG, "Fix from " + fix.source + " in " + fix.timeToFixMs + "ms, accuracy "
+                    + Math.round(fix.location.getAccuracy()) + "m, " + fix.updatesReceived + " updates"
+                    + (accurate ? "" : ", timed out"));
+        } else {
+            Log.i(TAG, "No fix after " + fix.timeToFixMs + "ms, " + fix.updatesReceived + " updates");
+        }
+        if (resultCallback != null) {
+            resultCallback.onResult(fix);
+        }
+    }
+
+    // A fix beats the current best when it is more accurate, or as accurate and newer
+    private boolean isBetter(Location location) {
+        if (bestFix == null) {
+            return true;
+        }
+        float accuracy = accuracyOf(location);
+        float bestAccuracy = accuracyOf(bestFix);
+        if (accuracy != bestAccuracy) {
+            return accuracy < bestAccuracy;
+        }
+        return location.getElapsedRealtimeNanos() > bestFix.getElapsedRealtimeNanos();
+    }
+
+    private static boolean isAccurate(Location location) {
+        return location != null && accuracyOf(location) <= ACCURACY_THRESHOLD_METERS;
+    }
+
+    // Fixes without an accuracy estimate never count as accurate
+    private static float accuracyOf(Location location) {
+        return location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE;
+    }
+
+    private static long ageMs(Location location) {
+        return (SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos()) / 1000000;
+    }
+}
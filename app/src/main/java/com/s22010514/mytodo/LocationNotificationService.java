@@ -22,21 +22,35 @@ import androidx.core.content.ContextCompat;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class LocationNotificationService extends Service implements LocationListener {
 
     private static final String CHANNEL_ID = "LocationTaskChannel";
     private static final int NOTIFICATION_ID = 1001;
 
     private LocationManager locationManager;
-    private Map<Integer, LocationTask> monitoredTasks = new HashMap<>();
-    private Map<Integer, Boolean> taskTriggeredMap = new HashMap<>();
+    private final GeofenceIndex geofenceIndex = new GeofenceIndex();
+    // Created once so the per-fix proximity check doesn't allocate a listener
+    private final GeofenceIndex.GeofenceListener geofenceListener = new GeofenceIndex.GeofenceListener() {
+        @Override
+        public void onEnter(LocationTask task, float distanceInMeters) {
+            repository.setLocationTaskTriggered(task.getId(), true, task.getUserId(), null);
+            triggerLocationNotification(task, distanceInMeters);
+        }
+
+        @Override
+        public void onExit(LocationTask task) {
+            repository.setLocationTaskTriggered(task.getId(), false, task.getUserId(), null);
+        }
+    };
     private MediaPlayer mediaPlayer;
     private Vibrator vibrator;
     private FirebaseAuth mAuth;
-    private DatabaseHelper dbHelper;
+    private TodoRepository repository;
+    private boolean monitoredTasksLoaded = false;
+    // Bumped by every reload and stop so an older reload finishing late is ignored
+    private int reloadGeneration = 0;
+    private boolean isDestroyed = false;
+    private final LocationSamplingPolicy samplingPolicy = new LocationSamplingPolicy();
 
     @Override
     public void onCreate() {
@@ -44,7 +58,7 @@ public class LocationNotificationService extends Service implements LocationList
         locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
         vibrator = (Vibrator) getSystemService(VIBRATOR_SERVICE);
         mAuth = FirebaseAuth.getInstance();
-        dbHelper = new DatabaseHelper(this);
+        repository = new TodoRepository(this);
         createNotificationChannel();
         startForegroundService();
     }
@@ -59,82 +73,96 @@ public class LocationNotificationService extends Service implements LocationList
             return START_NOT_STICKY;
         }
 
-        if (intent != null) {
-            if (intent.hasExtra("stopTaskId")) {
-                // Stop monitoring specific task
-                int taskId = intent.getIntExtra("stopTaskId", -1);
-                stopMonitoringTask(taskId);
-            } else if (intent.hasExtra("stopAllTasks")) {
-                // Stop all monitoring when user logs out
-                stopAllTasks();
-            } else if (intent.hasExtra("locationTaskId")) {
-                // Start monitoring new task - but only if it belongs to current user
-                String taskUserId = intent.getStringExtra("taskUserId");
-                if (taskUserId != null && taskUserId.equals(currentUser.getUid())) {
-                    LocationTask task = new LocationTask(
-                        intent.getIntExtra("locationTaskId", -1),
-                        intent.getStringExtra("locationTaskTitle"),
-                        "",
-                        "",
-                        intent.getDoubleExtra("latitude", 0.0),
-                        intent.getDoubleExtra("longitude", 0.0),
-                        intent.getIntExtra("radius", 100),
-                        true,
-                        System.currentTimeMillis(),
-                        taskUserId  // Add userId as the 10th parameter
-                    );
-                    startMonitoringTask(task);
-                }
-            }
+        if (intent != null && intent.hasExtra("stopAllTasks")) {
+            // Stop all monitoring when user logs out
+            stopAllTasks();
+            return START_NOT_STICKY;
+        }
+
+        if (intent != null && intent.hasExtra("stopTaskId")) {
+            // Stop monitoring the task right away, then reconcile with the database
+            stopMonitoringTask(intent.getIntExtra("stopTaskId", -1));
+            reloadMonitoredTasks(currentUser.getUid());
+        } else if (!monitoredTasksLoaded || (intent != null && intent.hasExtra("locationTaskId"))) {
+            // The database is the source of truth for what to monitor, so a START_STICKY
+            // restart (null intent) and a newly enabled task both rebuild the set from it
+            reloadMonitoredTasks(currentUser.getUid());
         }
         return START_STICKY;
     }
 
-    private void startMonitoringTask(LocationTask task) {
-        // Double-check user authentication before starting monitoring
-        FirebaseUser currentUser = mAuth.getCurrentUser();
-        if (currentUser == null || !currentUser.getUid().equals(task.getUserId())) {
-            return;
-        }
+    // Rebuilds the monitored set from the user's enabled places, keeping their saved triggered state
+    private void reloadMonitoredTasks(String userId) {
+        int generation = ++reloadGeneration;
+        repository.loadMonitoredLocationTasks(userId, geofences -> {
+            if (isDestroyed || generation != reloadGeneration || geofences == null) {
+                return;
+            }
+            // Double-check user authentication before starting monitoring
+            FirebaseUser currentUser = mAuth.getCurrentUser();
+            if (currentUser == null || !currentUser.getUid().equals(userId)) {
+                return;
+            }
+
+            geofenceIndex.clear();
+            for (GeofenceIndex.Geofence geofence : geofences) {
+                geofenceIndex.add(geofence);
+            }
+            monitoredTasksLoaded = true;
 
-        monitoredTasks.put(task.getId(), task);
-        taskTriggeredMap.put(task.getId(), false);
-        startLocationUpdates();
+            if (geofenceIndex.isEmpty()) {
+                stopLocationUpdates();
+                stopSelf();
+            } else {
+                // A place may have been added nearby, so sample quickly until the next fix says otherwise
+                samplingPolicy.reset();
+                startLocationUpdates();
+            }
+        });
     }
 
     private void stopMonitoringTask(int taskId) {
-        monitoredTasks.remove(taskId);
-        taskTriggeredMap.remove(taskId);
+        geofenceIndex.remove(taskId);
 
-        if (monitoredTasks.isEmpty()) {
+        if (geofenceIndex.isEmpty()) {
             stopLocationUpdates();
-            stopSelf();
         }
     }
 
     private void stopAllTasks() {
-        monitoredTasks.clear();
-        taskTriggeredMap.clear();
+        reloadGeneration++;
+        geofenceIndex.clear();
         stopLocationUpdates();
         stopSelf();
     }
 
+    // Registers for updates as the sampling policy currently asks: GPS plus network near a place, network only otherwise
     private void startLocationUpdates() {
         if (ContextCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
                 == PackageManager.PERMISSION_GRANTED) {
             try {
-                locationManager.requestLocationUpdates(
-                    LocationManager.GPS_PROVIDER,
-                    10000,
-                    10,
-                    this
-                );
-                locationManager.requestLocationUpdates(
-                    LocationManager.NETWORK_PROVIDER,
-                    10000,
-                    10,
-                    this
-                );
+                long interval = samplingPolicy.getIntervalMs();
+                float minDistance = samplingPolicy.getMinDistanceMeters();
+                boolean networkAvailable = locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER);
+
+                // Drop the previous registration so switching to network-only turns GPS off
+                locationManager.removeUpdates(this);
+                if (samplingPolicy.isHighAccuracy() || !networkAvailable) {
+                    locationManager.requestLocationUpdates(
+                        LocationManager.GPS_PROVIDER,
+                        interval,
+                        minDistance,
+                        this
+                    );
+                }
+                if (networkAvailable) {
+                    locationManager.requestLocationUpdates(
+                        LocationManager.NETWORK_PROVIDER,
+                        interval,
+                        minDistance,
+                        this
+                    );
+                }
             } catch (SecurityException e) {
                 // Handle permission error
             }
@@ -164,35 +192,16 @@ public class LocationNotificationService extends Service implements LocationList
             return;
         }
 
-        for (Map.Entry<Integer, LocationTask> entry : monitoredTasks.entrySet()) {
-            int taskId = entry.getKey();
-            LocationTask task = entry.getValue();
-
-            // Verify task belongs to current user
-            if (task.getUserId() == null || !currentUser.getUid().equals(task.getUserId())) {
-                continue;
-            }
-
-            float[] results = new float[1];
-            Location.distanceBetween(
-                currentLocation.getLatitude(), currentLocation.getLongitude(),
-                task.getLatitude(), task.getLongitude(),
-                results
-            );
+        // Only tasks in the fix's grid cell (and ones waiting to re-arm) are measured
+        geofenceIndex.check(currentLocation.getLatitude(), currentLocation.getLongitude(),
+                currentUser.getUid(), geofenceListener);
 
-            float distanceInMeters = results[0];
-            boolean wasTriggered = taskTriggeredMap.get(taskId);
-
-            if (distanceInMeters <= task.getNotificationRadius()) {
-                if (!wasTriggered) {
-                    triggerLocationNotification(task, distanceInMeters);
-                    taskTriggeredMap.put(taskId, true);
-                }
-            } else {
-                if (wasTriggered && distanceInMeters > task.getNotificationRadius() + 50) {
-                    taskTriggeredMap.put(taskId, false);
-                }
-            }
+        // Sample less often the longer it would take to reach the nearest place
+        samplingPolicy.onLocation(currentLocation);
+        double edgeDistance = geofenceIndex.nearestEdgeDistance(currentLocation.getLatitude(),
+                currentLocation.getLongitude(), currentUser.getUid());
+        if (samplingPolicy.update(edgeDistance) && !geofenceIndex.isEmpty()) {
+            startLocationUpdates();
         }
     }
 
@@ -279,10 +288,20 @@ public class LocationNotificationService extends Service implements LocationList
     public void onStatusChanged(String provider, int status, Bundle extras) {}
 
     @Override
-    public void onProviderEnabled(String provider) {}
+    public void onProviderEnabled(String provider) {
+        // The provider choice depends on what's enabled, so register again
+        if (!geofenceIndex.isEmpty()) {
+            startLocationUpdates();
+        }
+    }
 
     @Override
-    public void onProviderDisabled(String provider) {}
+    public void onProviderDisabled(String provider) {
+        // Fall back to GPS if the network provider was the only one registered
+        if (!geofenceIndex.isEmpty()) {
+            startLocationUpdates();
+        }
+    }
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -292,6 +311,7 @@ public class LocationNotificationService extends Service implements LocationList
     @Override
     public void onDestroy() {
         super.onDestroy();
+        isDestroyed = true;
         stopLocationUpdates();
         if (mediaPlayer != null) {
             mediaPlayer.release();
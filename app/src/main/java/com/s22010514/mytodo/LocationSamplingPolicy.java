@@ -0,0 +1,111 @@
+package com.s22010514.mytodo;
+
+import android.location.Location;
+
+/**
+ * Decides how often, and with which provider, LocationNotificationService asks for fixes.
+ * The interval is the time the user would need to reach the nearest geofence edge at their
+ * estimated speed, halved for safety, so far-away places cost only occasional network fixes.
+ */
+public class LocationSamplingPolicy {
+
+    static final long MIN_INTERVAL_MS = 10000;
+    static final long MAX_INTERVAL_MS = 10 * 60 * 1000;
+    static final float MIN_DISTANCE_METERS = 10;
+    static final float MAX_DISTANCE_METERS = 250;
+
+    // Closer than this to an edge the service switches from network-only to GPS
+    static final double HIGH_ACCURACY_DISTANCE_METERS = 1000;
+
+    // Assumed speed when there is no estimate yet or the user is standing still, a brisk walk
+    static final float MIN_SPEED_MPS = 1.5f;
+    // About 145 km/h, faster readings are treated as location jumps
+    static final float MAX_SPEED_MPS = 40f;
+
+    // Sample again after covering this fraction of the distance to the edge
+    private static final double SAFETY_FACTOR = 0.5;
+
+    private boolean highAccuracy;
+    private long intervalMs;
+    private float minDistanceMeters;
+    private float speedMps;
+
+    private boolean hasLastFix;
+    private double lastLatitude;
+    private double lastLongitude;
+    private long lastTime;
+
+    public LocationSamplingPolicy() {
+        reset();
+    }
+
+    // Back to frequent GPS fixes, used when the monitored places change
+    public void reset() {
+        highAccuracy = true;
+        intervalMs = MIN_INTERVAL_MS;
+        minDistanceMeters = MIN_DISTANCE_METERS;
+        speedMps = MIN_SPEED_MPS;
+        hasLastFix = false;
+    }
+
+    // Updates the speed estimate from a new fix
+    public void onLocation(Location location) {
+        float measured = -1;
+        if (location.hasSpeed()) {
+            measured = location.getSpeed();
+        } else if (hasLastFix && location.getTime() > lastTime) {
+            // Ignore movement within the fix's accuracy so network jitter doesn't look like travel
+            double moved = GeofenceIndex.distanceInMeters(lastLatitude, lastLongitude,
+                    location.getLatitude(), location.getLongitude()) - location.getAccuracy();
+            measured = (float) (Math.max(0, moved) * 1000.0 / (location.getTime() - lastTime));
+        }
+
+        if (measured >= 0) {
+            measured = Math.min(measured, MAX_SPEED_MPS);
+            // Speeding up counts straight away, slowing down is smoothed so a stop light doesn't slow sampling
+            speedMps = measured > speedMps ? measured : 0.7f * speedMps + 0.3f * measured;
+            speedMps = Math.max(speedMps, MIN_SPEED_MPS);
+        }
+
+        hasLastFix = true;
+        lastLatitude = location.getLatitude();
+        lastLongitude = location.getLongitude();
+        lastTime = location.getTime();
+    }
+
+    /**
+     * Recomputes the request for the given distance to the nearest geofence edge.
+     * Returns true when it differs enough from the current one to re-register for updates.
+     */
+    public boolean update(double edgeDistanceMeters) {
+        double secondsToEdge = edgeDistanceMeters / speedMps;
+        long newIntervalMs = (long) Math.max(MIN_INTERVAL_MS,
+                Math.min(MAX_INTERVAL_MS, secondsToEdge * SAFETY_FACTOR * 1000));
+        float newMinDistance = (float) Math.max(MIN_DISTANCE_METERS,
+                Math.min(MAX_DISTANCE_METERS, edgeDistanceMeters * SAFETY_FACTOR / 2));
+        boolean newHighAccuracy = edgeDistanceMeters <= HIGH_ACCURACY_DISTANCE_METERS;
+
+        // Small changes aren't worth re-registering with the LocationManager
+        boolean changed = newHighAccuracy != highAccuracy
+                || newIntervalMs < intervalMs * 3 / 4
+                || newIntervalMs > intervalMs * 4 / 3;
+        if (changed) {
+            highAccuracy = newHighAccuracy;
+            intervalMs = newIntervalMs;
+            minDistanceMeters = newMinDistance;
+        }
+        return changed;
+    }
+
+    public boolean isHighAccuracy() {
+        return highAccuracy;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public float getMinDistanceMeters() {
+        return minDistanceMeters;
+    }
+}
@@ -1,6 +1,5 @@
 package com.s22010514.mytodo;
 
-import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.location.Location;
@@ -18,26 +17,62 @@ import com.google.android.material.button.MaterialButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapter.LocationTaskViewHolder> {
 
+    // Rebinds only the distance text of a row
+    private static final Object PAYLOAD_DISTANCE = new Object();
+
+    // Newest first, matching the order the places are loaded in
+    private static final Comparator<LocationTask> NEWEST_FIRST = (a, b) -> {
+        int byDate = Long.compare(b.getCreatedDate(), a.getCreatedDate());
+        return byDate != 0 ? byDate : Integer.compare(b.getId(), a.getId());
+    };
+
     private List<LocationTask> locationTaskList;
     private Context context;
-    private DatabaseHelper dbHelper;
+    private TodoRepository repository;
     private OnLocationTaskDeletedListener onLocationTaskDeletedListener;
+    // Where the undo message is shown
+    private RecyclerView recyclerView;
     private Location currentUserLocation;
     private FirebaseAuth mAuth;
 
+    // Results of the latest distance pass, keyed by location task ID
+    private Map<Integer, Double> distances = new HashMap<>();
+    private Map<Integer, String> distanceLabels = new HashMap<>();
+    // Bumped for every pass so a result computed for an older list or location is dropped
+    private int distanceGeneration;
+    private boolean sortByNearest;
+
+    // Places without a distance yet go last
+    private final Comparator<LocationTask> nearestFirst = (a, b) -> {
+        Double distanceA = distances.get(a.getId());
+        Double distanceB = distances.get(b.getId());
+        if (distanceA == null || distanceB == null) {
+            return distanceA != null ? -1 : distanceB != null ? 1 : NEWEST_FIRST.compare(a, b);
+        }
+        return Double.compare(distanceA, distanceB);
+    };
+
     public interface OnLocationTaskDeletedListener {
         void onLocationTaskDeleted();
+
+        // A deleted place was brought back with undo
+        void onLocationTaskRestored();
     }
 
     public LocationTaskAdapter(List<LocationTask> locationTaskList, Context context) {
         this.locationTaskList = locationTaskList;
         this.context = context;
-        this.dbHelper = new DatabaseHelper(context);
+        this.repository = new TodoRepository(context);
         this.mAuth = FirebaseAuth.getInstance();
     }
 
@@ -47,7 +82,82 @@ public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapte
 
     public void setCurrentUserLocation(Location location) {
         this.currentUserLocation = location;
-        notifyDataSetChanged(); // Update distance calculations
+        refreshDistances();
+    }
+
+    // Call after places were added, removed or edited so their distances and order are updated
+    public void onLocationTasksChanged() {
+        sortBy(sortByNearest ? nearestFirst : NEWEST_FIRST);
+        refreshDistances();
+    }
+
+    public boolean isSortByNearest() {
+        return sortByNearest;
+    }
+
+    public void setSortByNearest(boolean sortByNearest) {
+        this.sortByNearest = sortByNearest;
+        sortBy(sortByNearest ? nearestFirst : NEWEST_FIRST);
+    }
+
+    // Calculates every distance in one background pass, then rebinds only the rows whose label changed
+    private void refreshDistances() {
+        if (currentUserLocation == null) {
+            return;
+        }
+        int generation = ++distanceGeneration;
+        PlaceDistanceCalculator.calculate(new ArrayList<>(locationTaskList),
+                currentUserLocation.getLatitude(), currentUserLocation.getLongitude(), result -> {
+                    if (generation != distanceGeneration) {
+                        return;
+                    }
+                    Map<Integer, String> previousLabels = distanceLabels;
+                    distances = result.distances;
+                    distanceLabels = result.labels;
+                    if (sortByNearest) {
+                        sortBy(nearestFirst);
+                    }
+                    for (int i = 0; i < locationTaskList.size(); i++) {
+                        int id = locationTaskList.get(i).getId();
+                        String label = distanceLabels.get(id);
+                        if (label != null && !label.equals(previousLabels.get(id))) {
+                            notifyItemChanged(i, PAYLOAD_DISTANCE);
+                        }
+                    }
+                });
+    }
+
+    // Reorders the list with item moves, so rows keep their views and aren't rebound
+    private void sortBy(Comparator<LocationTask> order) {
+        List<LocationTask> sorted = new ArrayList<>(locationTaskList);
+        Collections.sort(sorted, order);
+        for (int target = 0; target < sorted.size(); target++) {
+            LocationTask locationTask = sorted.get(target);
+            if (locationTaskList.get(target) == locationTask) {
+                continue;
+            }
+            int current = locationTaskList.indexOf(locationTask);
+            locationTaskList.remove(current);
+            locationTaskList.add(target, locationTask);
+            notifyItemMoved(current, target);
+        }
+    }
+
+    private String getDistanceLabel(LocationTask locationTask) {
+        String label = distanceLabels.get(locationTask.getId());
+        return label != null ? label : PlaceDistanceCalculator.UNKNOWN_DISTANCE_LABEL;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        this.recyclerView = null;
     }
 
     @NonNull
@@ -63,12 +173,31 @@ public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapte
         holder.bind(locationTask, position);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull LocationTaskViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && allDistancePayloads(payloads)) {
+            holder.bindDistance(locationTaskList.get(position));
+        } else {
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+
+    private static boolean allDistancePayloads(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_DISTANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public int getItemCount() {
         return locationTaskList.size();
     }
 
-    private void deleteLocationTask(LocationTask locationTask, int position) {
+    // Deleted places stay as tombstones for a while, so there's no confirmation, just an undo
+    private void deleteLocationTask(LocationTask locationTask) {
         // Check user authentication
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser == null) {
@@ -78,29 +207,32 @@ public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapte
 
         String currentUserId = currentUser.getUid();
 
-        new AlertDialog.Builder(context)
-                .setTitle("🗑️ Delete Location Task")
-                .setMessage("Are you sure you want to delete this location task?\n\n\"" + locationTask.getTitle() + "\"\n\nThis action cannot be undone.")
-                .setPositiveButton("DELETE", (dialog, which) -> {
-                    // Use secure delete method with user ID verification
-                    boolean isDeleted = dbHelper.deleteLocationTaskById(locationTask.getId(), currentUserId);
-                    if (isDeleted) {
-                        locationTaskList.remove(position);
-                        notifyItemRemoved(position);
-                        notifyItemRangeChanged(position, locationTaskList.size());
-
-                        if (onLocationTaskDeletedListener != null) {
-                            onLocationTaskDeletedListener.onLocationTaskDeleted();
-                        }
+        // Use secure delete method with user ID verification
+        repository.deleteLocationTask(locationTask.getId(), currentUserId, isDeleted -> {
+            if (isDeleted) {
+                // The list may have changed while the delete ran, so look the task up again
+                int currentPosition = locationTaskList.indexOf(locationTask);
+                if (currentPosition != -1) {
+                    locationTaskList.remove(currentPosition);
+                    notifyItemRemoved(currentPosition);
+                    notifyItemRangeChanged(currentPosition, locationTaskList.size());
+                }
 
-                        Toast.makeText(context, "✅ Location task deleted successfully", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(context, "❌ Failed to delete location task or unauthorized access", Toast.LENGTH_SHORT).show();
-                    }
-                })
-                .setNegativeButton("CANCEL", null)
-                .setIcon(android.R.drawable.ic_dialog_alert)
-                .show();
+                if (onLocationTaskDeletedListener != null) {
+                    onLocationTaskDeletedListener.onLocationTaskDeleted();
+                }
+
+                UndoSnackbar.show(recyclerView, "🗑️ Location task deleted", () ->
+                        repository.restoreLocationTasks(Collections.singletonList(locationTask.getId()), currentUserId,
+                                restored -> {
+                                    if (restored > 0 && onLocationTaskDeletedListener != null) {
+                                        onLocationTaskDeletedListener.onLocationTaskRestored();
+                                    }
+                                }));
+            } else {
+                Toast.makeText(context, "❌ Failed to delete location task or unauthorized access", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void editLocationTask(LocationTask locationTask) {
@@ -133,26 +265,6 @@ public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapte
         }
     }
 
-    private String calculateDistance(LocationTask locationTask) {
-        if (currentUserLocation == null) {
-            return "--km away";
-        }
-
-        float[] results = new float[1];
-        Location.distanceBetween(
-                currentUserLocation.getLatitude(), currentUserLocation.getLongitude(),
-                locationTask.getLatitude(), locationTask.getLongitude(),
-                results
-        );
-
-        float distanceInMeters = results[0];
-        if (distanceInMeters < 1000) {
-            return String.format("%.0fm away", distanceInMeters);
-        } else {
-            return String.format("%.1fkm away", distanceInMeters / 1000);
-        }
-    }
-
     class LocationTaskViewHolder extends RecyclerView.ViewHolder {
 
         private TextView locationTaskTitle;
@@ -180,7 +292,7 @@ public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapte
         public void bind(LocationTask locationTask, int position) {
             locationTaskTitle.setText(locationTask.getTitle());
             locationAddress.setText(locationTask.getLocationAddress());
-            distanceText.setText("📏 " + calculateDistance(locationTask));
+            bindDistance(locationTask);
 
             // Handle description
             String description = locationTask.getDescription();
@@ -205,10 +317,14 @@ public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapte
             // Set up click listeners for action buttons
             navigateBtn.setOnClickListener(v -> navigateToLocation(locationTask));
             editLocationTaskBtn.setOnClickListener(v -> editLocationTask(locationTask));
-            deleteLocationTaskBtn.setOnClickListener(v -> deleteLocationTask(locationTask, position));
+            deleteLocationTaskBtn.setOnClickListener(v -> deleteLocationTask(locationTask));
 
             // Set up notification toggle click listener
-            notificationToggleBtn.setOnClickListener(v -> toggleNotification(locationTask, position));
+            notificationToggleBtn.setOnClickListener(v -> toggleNotification(locationTask));
+        }
+
+        public void bindDistance(LocationTask locationTask) {
+            distanceText.setText(getDistanceLabel(locationTask));
         }
 
         private void updateNotificationToggleButton(LocationTask locationTask) {
@@ -225,7 +341,7 @@ public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapte
             }
         }
 
-        private void toggleNotification(LocationTask locationTask, int position) {
+        private void toggleNotification(LocationTask locationTask) {
             // Check user authentication
             FirebaseUser currentUser = mAuth.getCurrentUser();
             if (currentUser == null) {
@@ -237,7 +353,7 @@ public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapte
             boolean newNotificationState = !locationTask.isNotificationEnabled();
 
             // Update in database with user ID verification
-            boolean updated = dbHelper.updateLocationTaskById(
+            repository.updateLocationTask(
                     locationTask.getId(),
                     locationTask.getTitle(),
                     locationTask.getDescription(),
@@ -246,32 +362,35 @@ public class LocationTaskAdapter extends RecyclerView.Adapter<LocationTaskAdapte
                     locationTask.getLongitude(),
                     locationTask.getNotificationRadius(),
                     newNotificationState,
-                    currentUserId
-            );
-
-            if (updated) {
-                // Update the model
-                locationTask.setNotificationEnabled(newNotificationState);
-
-                // Update UI
-                updateNotificationToggleButton(locationTask);
-
-                // Show feedback
-                if (newNotificationState) {
-                    Toast.makeText(context, "🔔 Notifications enabled for " + locationTask.getTitle(),
-                            Toast.LENGTH_SHORT).show();
-                    // Start location monitoring for this task
-                    startLocationMonitoring(locationTask);
-                } else {
-                    Toast.makeText(context, "🔕 Notifications disabled for " + locationTask.getTitle(),
-                            Toast.LENGTH_SHORT).show();
-                    // Stop location monitoring for this task
-                    stopLocationMonitoring(locationTask);
-                }
-            } else {
-                Toast.makeText(context, "❌ Failed to update notification settings or unauthorized access",
-                        Toast.LENGTH_SHORT).show();
-            }
+                    currentUserId,
+                    updated -> {
+                        if (updated) {
+                            // Update the model
+                            locationTask.setNotificationEnabled(newNotificationState);
+
+                            // Rebind the row, this holder may have been recycled while the update ran
+                            int currentPosition = locationTaskList.indexOf(locationTask);
+                            if (currentPosition != -1) {
+                                notifyItemChanged(currentPosition);
+                            }
+
+                            // Show feedback
+                            if (newNotificationState) {
+                                Toast.makeText(context, "🔔 Notifications enabled for " + locationTask.getTitle(),
+                                        Toast.LENGTH_SHORT).show();
+                                // Start location monitoring for this task
+                                startLocationMonitoring(locationTask);
+                            } else {
+                                Toast.makeText(context, "🔕 Notifications disabled for " + locationTask.getTitle(),
+                                        Toast.LENGTH_SHORT).show();
+                                // Stop location monitoring for this task
+                                stopLocationMonitoring(locationTask);
+                            }
+                        } else {
+                            Toast.makeText(context, "❌ Failed to update notification settings or unauthorized access",
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    });
         }
 
         private void startLocationMonitoring(LocationTask locationTask) {
@@ -0,0 +1,252 @@
+package com.s22010514.mytodo;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers JSON requests to a mail API from a queue kept on disk. Each request is written to
+ * its own file before the first attempt and deleted once the server accepts or rejects it, so
+ * a send interrupted by a network drop or an app restart is picked up again by resumePending().
+ * Failed attempts are retried with exponential backoff; the worker pool size caps how many
+ * requests are in flight, and connections are left open for HttpURLConnection to reuse.
+ */
+public class MailDispatcher {
+
+    private static final String TAG = "MailDispatcher";
+    private static final String QUEUE_FILE_SUFFIX = ".json";
+
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+
+    public interface Listener {
+        void onDelivered();
+
+        void onFailed(String error);
+    }
+
+    private final File queueDir;
+    private final URL endpoint;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final long maxAgeMs;
+    private final Executor callbackExecutor;
+    private final ScheduledThreadPoolExecutor workers;
+    private final Random random = new Random();
+
+    // Queue files with an attempt scheduled in this process, so resumePending() doesn't send them twice
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * maxInFlight is the number of worker threads, and so the most requests sent at once.
+     * Requests still undelivered maxAgeMs after they were queued are dropped and reported as failed.
+     * Listeners are called on callbackExecutor.
+     */
+    public MailDispatcher(File queueDir, URL endpoint, int maxInFlight, long baseBackoffMs, long maxBackoffMs,
+                          long maxAgeMs, Executor callbackExecutor) {
+        this.queueDir = queueDir;
+        this.endpoint = endpoint;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.maxAgeMs = maxAgeMs;
+        this.callbackExecutor = callbackExecutor;
+        this.workers = new ScheduledThreadPoolExecutor(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Saves the request to the queue and sends it as soon as a worker is free
+    public void enqueue(String jsonBody, Listener listener) {
+        workers.execute(() -> {
+            String name = System.currentTimeMillis() + "_" + UUID.randomUUID() + QUEUE_FILE_SUFFIX;
+            // Claimed before the file exists so a concurrent resumePending() skips it
+            attempts.put(name, 0);
+            try {
+                writeQueueFile(name, jsonBody);
+            } catch (IOException e) {
+                // Without the queue file the request is still worth sending once
+                Log.e(TAG, "Failed to queue email request", e);
+            }
+            if (listener != null) {
+                listeners.put(name, listener);
+            }
+            attempt(name, jsonBody);
+        });
+    }
+
+    // Schedules every queued request left over from an earlier run
+    public void resumePending() {
+        workers.execute(() -> {
+            File[] files = queueDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(QUEUE_FILE_SUFFIX) && attempts.putIfAbsent(name, 0) == null) {
+                    workers.execute(() -> attemptQueued(name));
+                }
+            }
+        });
+    }
+
+    // Number of requests waiting in the queue on disk
+    public int getPendingCount() {
+        String[] names = queueDir.list((dir, name) -> name.endsWith(QUEUE_FILE_SUFFIX));
+        return names == null ? 0 : names.length;
+    }
+
+    // Stops the workers; queued requests stay on disk for the next dispatcher
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    // Waits for the workers to stop after shutdown(), used by tests
+    void awaitTermination() throws InterruptedException {
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void attemptQueued(String name) {
+        String body;
+        try {
+            body = readQueueFile(name);
+        } catch (IOException e) {
+            // Deleted by a finished attempt, or unreadable; either way there is nothing to send
+            attempts.remove(name);
+            return;
+        }
+        attempt(name, body);
+    }
+
+    private void attempt(String name, String body) {
+        int attempt = attempts.merge(name, 1, Integer::sum);
+        int responseCode;
+        String response;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setRequestProperty("User-Agent", "MyToDo-Android-App");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            connection.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(bytes);
+            }
+
+            responseCode = connection.getResponseCode();
+            // Reading the body to the end and not calling disconnect() returns the socket to the keep-alive pool
+            InputStream in = responseCode < 400 ? connection.getInputStream() : connection.getErrorStream();
+            response = in == null ? "" : readFully(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Email attempt " + attempt + " failed: " + e.getMessage());
+            retryOrFail(name, body, attempt, "Network error: " + e.getMessage());
+            return;
+        }
+
+        if (responseCode >= 200 && responseCode < 300) {
+            finish(name, null);
+        } else if (responseCode == 429 || responseCode >= 500) {
+            // Rate limited or a server problem, both worth another try
+            Log.w(TAG, "Email attempt " + attempt + " got HTTP " + responseCode);
+            retryOrFail(name, body, attempt, "HTTP " + responseCode + ": " + response);
+        } else {
+            // The request itself was rejected, sending it again won't help
+            finish(name, "HTTP " + responseCode + ": " + response);
+        }
+    }
+
+    private void retryOrFail(String name, String body, int attempt, String error) {
+        if (System.currentTimeMillis() - queuedAt(name) > maxAgeMs) {
+            finish(name, error);
+            return;
+        }
+        // Full backoff doubles each attempt; a random half of it spreads out retries after an outage
+        long backoff = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 20));
+        long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+        workers.schedule(() -> attempt(name, body), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Removes the request from the queue and reports the outcome, a null error meaning delivered
+    private void finish(String name, String error) {
+        new File(queueDir, name).delete();
+        attempts.remove(name);
+        Listener listener = listeners.remove(name);
+        if (listener != null) {
+            callbackExecutor.execute(() -> {
+                if (error == null) {
+                    listener.onDelivered();
+                } else {
+                    listener.onFailed(error);
+                }
+            });
+        }
+    }
+
+    private static long queuedAt(String name) {
+        try {
+            return Long.parseLong(name.substring(0, name.indexOf('_')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    // Written to a temporary name first so a crash can't leave a truncated request in the queue
+    private void writeQueueFile(String name, String body) throws IOException {
+        if (!queueDir.exists() && !queueDir.mkdirs()) {
+            throw new IOException("Can't create " + queueDir);
+        }
+        File temp = new File(queueDir, name + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(new File(queueDir, name))) {
+            temp.delete();
+            throw new IOException("Can't rename " + temp);
+        }
+    }
+
+    private String readQueueFile(String name) throws IOException {
+        try (InputStream in = new FileInputStream(new File(queueDir, name))) {
+            return readFully(in);
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -34,6 +34,12 @@ public class MainActivity extends AppCompatActivity {
         // Initialize the sensorManagerHelper instance
         sensorManagerHelper = sensorManagerHelper.getInstance(this);
 
+        // Finish sending any emails that were still queued when the app was last closed
+        EmailService.resumePendingEmails(this);
+
+        // Purge deleted rows past their undo window and shrink the database file
+        DatabaseCompactor.schedule(this);
+
         // Check if user is already signed in and update UI accordingly
         checkUserAuthentication();
     }
@@ -4,10 +4,7 @@ import android.Manifest;
 import android.app.AlertDialog;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.location.Address;
-import android.location.Geocoder;
 import android.location.Location;
-import android.location.LocationListener;
 import android.location.LocationManager;
 import android.net.Uri;
 import android.os.Bundle;
@@ -26,11 +23,7 @@ import com.google.android.material.textfield.TextInputEditText;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
-import java.io.IOException;
-import java.util.List;
-import java.util.Locale;
-
-public class MapPage extends AppCompatActivity implements LocationListener {
+public class MapPage extends AppCompatActivity {
 
     // UI elements
     private TextInputEditText locationTaskTitleInput;
@@ -48,15 +41,19 @@ public class MapPage extends AppCompatActivity implements LocationListener {
     private TextView gpsStatusIcon;
 
     // Services and helpers
-    private DatabaseHelper dbHelper;
+    private TodoRepository repository;
     private LocationManager locationManager;
-    private Geocoder geocoder;
+    private LocationFixEngine locationFixEngine;
+    private AddressResolver addressResolver;
     private FirebaseAuth mAuth;
     private String currentUserId;
 
     // Location data
     private double selectedLatitude = 0.0;
     private double selectedLongitude = 0.0;
+    // Address text the selected coordinates belong to, so leaving the field unchanged doesn't look it up again
+    private String resolvedAddress;
+    private boolean addressLookupPending = false;
 
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
     private static final int GPS_ENABLE_REQUEST_CODE = 1002;
@@ -86,9 +83,10 @@ public class MapPage extends AppCompatActivity implements LocationListener {
         initializeViews();
 
         // Initialize services
-        dbHelper = new DatabaseHelper(this);
+        repository = new TodoRepository(this);
         locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
-        geocoder = new Geocoder(this, Locale.getDefault());
+        locationFixEngine = new LocationFixEngine(locationManager);
+        addressResolver = new AddressResolver(this);
 
         // Set up click listeners
         setupClickListeners();
@@ -132,7 +130,7 @@ public class MapPage extends AppCompatActivity implements LocationListener {
         locationAddressInput.setOnFocusChangeListener((v, hasFocus) -> {
             if (!hasFocus) {
                 String address = locationAddressInput.getText().toString().trim();
-                if (!address.isEmpty()) {
+                if (!address.isEmpty() && !address.equals(resolvedAddress)) {
                     geocodeAddress(address);
                 }
             }
@@ -172,6 +170,11 @@ public class MapPage extends AppCompatActivity implements LocationListener {
             return;
         }
 
+        if (addressLookupPending) {
+            Toast.makeText(this, "📍 Still looking up the address, try again in a moment", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         if (selectedLatitude == 0.0 && selectedLongitude == 0.0) {
             Toast.makeText(this, "Please select a location first", Toast.LENGTH_SHORT).show();
             return;
@@ -183,52 +186,57 @@ public class MapPage extends AppCompatActivity implements LocationListener {
         // Check if this is an edit operation or a new task
         Intent intent = getIntent();
         boolean isEditOperation = intent.hasExtra("locationTaskId");
-        boolean success;
+
+        // Later edits of this place can then skip the geocoder, even offline
+        addressResolver.remember(address, selectedLatitude, selectedLongitude);
+
+        // Prevent double saves while the write is running
+        saveLocationTaskBtn.setEnabled(false);
 
         if (isEditOperation) {
             // Update existing task
             int locationTaskId = intent.getIntExtra("locationTaskId", -1);
-            success = dbHelper.updateLocationTaskById(locationTaskId, title, description, address,
-                selectedLatitude, selectedLongitude, notificationRadius, notificationEnabled, currentUserId);
-
-            if (success) {
-                // Stop monitoring the old task first
-                Intent stopServiceIntent = new Intent(this, LocationNotificationService.class);
-                stopServiceIntent.putExtra("stopTaskId", locationTaskId);
-                startService(stopServiceIntent);
-
-                // Start location monitoring service if notifications are enabled
-                if (notificationEnabled) {
-                    startLocationMonitoringService(title, selectedLatitude, selectedLongitude, notificationRadius, locationTaskId);
+            repository.updateLocationTask(locationTaskId, title, description, address,
+                selectedLatitude, selectedLongitude, notificationRadius, notificationEnabled, currentUserId, success -> {
+                if (success) {
+                    // Stop monitoring the old task first
+                    Intent stopServiceIntent = new Intent(this, LocationNotificationService.class);
+                    stopServiceIntent.putExtra("stopTaskId", locationTaskId);
+                    startService(stopServiceIntent);
+
+                    // Start location monitoring service if notifications are enabled
+                    if (notificationEnabled) {
+                        startLocationMonitoringService(title, selectedLatitude, selectedLongitude, notificationRadius, locationTaskId);
+                    }
+
+                    Toast.makeText(this, "✅ Location task updated!" +
+                        (notificationEnabled ? "\n📍 Radius: " + notificationRadius + "m\n🔔 Location monitoring updated!" : "\n🔕 Notifications disabled"),
+                        Toast.LENGTH_LONG).show();
+                    finish();
+                } else {
+                    saveLocationTaskBtn.setEnabled(true);
+                    Toast.makeText(this, "❌ Failed to update location task", Toast.LENGTH_SHORT).show();
                 }
-
-                Toast.makeText(this, "✅ Location task updated!" +
-                    (notificationEnabled ? "\n📍 Radius: " + notificationRadius + "m\n🔔 Location monitoring updated!" : "\n🔕 Notifications disabled"),
-                    Toast.LENGTH_LONG).show();
-            } else {
-                Toast.makeText(this, "❌ Failed to update location task", Toast.LENGTH_SHORT).show();
-            }
+            });
         } else {
             // Create new task
-            success = dbHelper.insertLocationTask(title, description, address,
-                selectedLatitude, selectedLongitude, notificationRadius, notificationEnabled, currentUserId);
-
-            if (success) {
-                // Start location monitoring service if notifications are enabled
-                if (notificationEnabled) {
-                    startLocationMonitoringService(title, selectedLatitude, selectedLongitude, notificationRadius, -1);
+            repository.insertLocationTask(title, description, address,
+                selectedLatitude, selectedLongitude, notificationRadius, notificationEnabled, currentUserId, success -> {
+                if (success) {
+                    // Start location monitoring service if notifications are enabled
+                    if (notificationEnabled) {
+                        startLocationMonitoringService(title, selectedLatitude, selectedLongitude, notificationRadius, -1);
+                    }
+
+                    Toast.makeText(this, "✅ Location task saved!" +
+                        (notificationEnabled ? "\n📍 Radius: " + notificationRadius + "m\n🔔 Location monitoring started!" : "\n🔕 Notifications disabled"),
+                        Toast.LENGTH_LONG).show();
+                    finish();
+                } else {
+                    saveLocationTaskBtn.setEnabled(true);
+                    Toast.makeText(this, "❌ Failed to save location task", Toast.LENGTH_SHORT).show();
                 }
-
-                Toast.makeText(this, "✅ Location task saved!" +
-                    (notificationEnabled ? "\n📍 Radius: " + notificationRadius + "m\n🔔 Location monitoring started!" : "\n🔕 Notifications disabled"),
-                    Toast.LENGTH_LONG).show();
-            } else {
-                Toast.makeText(this, "❌ Failed to save location task", Toast.LENGTH_SHORT).show();
-            }
-        }
-
-        if (success) {
-            finish();
+            });
         }
     }
 
@@ -244,36 +252,21 @@ public class MapPage extends AppCompatActivity implements LocationListener {
             return;
         }
 
-        // Check if GPS is enabled
-        if (!isGpsEnabled()) {
-            android.util.Log.d("MapPage", "GPS not enabled, showing enable dialog");
+        // GPS and network race for the fix, so either one being on is enough
+        if (locationFixEngine.getEnabledProviders().isEmpty()) {
+            android.util.Log.d("MapPage", "No location provider enabled, showing enable dialog");
             Toast.makeText(this, "📍 Please enable GPS", Toast.LENGTH_SHORT).show();
             showGpsEnableDialog();
             return;
         }
 
+        if (locationFixEngine.isRunning()) {
+            return;
+        }
+
         try {
-            android.util.Log.d("MapPage", "Requesting location updates from GPS provider");
             Toast.makeText(this, "📍 Getting current location...", Toast.LENGTH_SHORT).show();
-
-            // Request location updates with timeout
-            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, this);
-
-            // Also try network provider as backup
-            if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
-                android.util.Log.d("MapPage", "Also requesting from network provider");
-                locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, 0, 0, this);
-            }
-
-            // Set a timeout to stop location requests after 30 seconds
-            new android.os.Handler().postDelayed(() -> {
-                locationManager.removeUpdates(this);
-                if (selectedLatitude == 0.0 && selectedLongitude == 0.0) {
-                    android.util.Log.d("MapPage", "Location request timed out");
-                    Toast.makeText(this, "❌ Location request timed out. Please try again or enter address manually.", Toast.LENGTH_LONG).show();
-                }
-            }, 30000);
-
+            locationFixEngine.start(this::onLocationFix);
         } catch (SecurityException e) {
             android.util.Log.e("MapPage", "Security exception: " + e.getMessage());
             Toast.makeText(this, "❌ Location permission error", Toast.LENGTH_SHORT).show();
@@ -284,17 +277,19 @@ public class MapPage extends AppCompatActivity implements LocationListener {
     }
 
     private void geocodeAddress(String address) {
-        try {
-            List<Address> addresses = geocoder.getFromLocationName(address, 1);
-            if (addresses != null && !addresses.isEmpty()) {
-                Address location = addresses.get(0);
-                selectedLatitude = location.getLatitude();
-                selectedLongitude = location.getLongitude();
-                updateLocationDisplay();
+        addressLookupPending = true;
+        selectedLocationText.setText("📍 Looking up address...");
+        addressResolver.resolveAddress(address, result -> {
+            addressLookupPending = false;
+            if (result.status == AddressResolver.FOUND) {
+                selectedLatitude = result.latitude;
+                selectedLongitude = result.longitude;
+                resolvedAddress = address;
+            } else if (result.status == AddressResolver.FAILED) {
+                Toast.makeText(this, "Failed to geocode address", Toast.LENGTH_SHORT).show();
             }
-        } catch (IOException e) {
-            Toast.makeText(this, "Failed to geocode address", Toast.LENGTH_SHORT).show();
-        }
+            updateLocationDisplay();
+        });
     }
 
     private void updateLocationDisplay() {
@@ -311,10 +306,6 @@ public class MapPage extends AppCompatActivity implements LocationListener {
         }
     }
 
-    private boolean isGpsEnabled() {
-        return locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER);
-    }
-
     private void showGpsEnableDialog() {
         new AlertDialog.Builder(this)
             .setTitle("GPS Required")
@@ -371,6 +362,7 @@ public class MapPage extends AppCompatActivity implements LocationListener {
             // Set location coordinates
             selectedLatitude = latitude;
             selectedLongitude = longitude;
+            resolvedAddress = address;
 
             // Set notification settings
             notificationSwitch.setChecked(notificationEnabled);
@@ -423,95 +415,65 @@ public class MapPage extends AppCompatActivity implements LocationListener {
         finish();
     }
 
-    // LocationListener implementation
-    @Override
-    public void onLocationChanged(Location location) {
+    private void onLocationFix(LocationFixEngine.Fix fix) {
+        if (fix.location == null) {
+            android.util.Log.d("MapPage", "Location request timed out");
+            Toast.makeText(this, "❌ Location request timed out. Please try again or enter address manually.", Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        Location location = fix.location;
         android.util.Log.d("MapPage", "Location received: " + location.getLatitude() + ", " + location.getLongitude());
 
         selectedLatitude = location.getLatitude();
         selectedLongitude = location.getLongitude();
         updateLocationDisplay();
-        locationManager.removeUpdates(this);
 
         // Perform reverse geocoding to get address from coordinates
         reverseGeocodeLocation(selectedLatitude, selectedLongitude);
 
-        Toast.makeText(this, "✅ Current location obtained!", Toast.LENGTH_SHORT).show();
+        if (fix.accurate) {
+            Toast.makeText(this, "✅ Current location obtained!", Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, "✅ Approximate location obtained (±" + Math.round(location.getAccuracy()) + "m)",
+                    Toast.LENGTH_SHORT).show();
+        }
     }
 
     private void reverseGeocodeLocation(double latitude, double longitude) {
-        try {
-            android.util.Log.d("MapPage", "Starting reverse geocoding for: " + latitude + ", " + longitude);
-
-            List<Address> addresses = geocoder.getFromLocation(latitude, longitude, 1);
-            if (addresses != null && !addresses.isEmpty()) {
-                Address address = addresses.get(0);
-
-                // Build a readable address string
-                StringBuilder addressBuilder = new StringBuilder();
+        android.util.Log.d("MapPage", "Starting reverse geocoding for: " + latitude + ", " + longitude);
 
-                // Add street number and name
-                if (address.getSubThoroughfare() != null) {
-                    addressBuilder.append(address.getSubThoroughfare()).append(" ");
-                }
-                if (address.getThoroughfare() != null) {
-                    addressBuilder.append(address.getThoroughfare()).append(", ");
-                }
-
-                // Add locality (city/town)
-                if (address.getLocality() != null) {
-                    addressBuilder.append(address.getLocality()).append(", ");
-                }
-
-                // Add admin area (state/province)
-                if (address.getAdminArea() != null) {
-                    addressBuilder.append(address.getAdminArea()).append(", ");
-                }
-
-                // Add country
-                if (address.getCountryName() != null) {
-                    addressBuilder.append(address.getCountryName());
-                }
-
-                String fullAddress = addressBuilder.toString();
-                // Remove trailing comma and space if present
-                if (fullAddress.endsWith(", ")) {
-                    fullAddress = fullAddress.substring(0, fullAddress.length() - 2);
-                }
-
-                android.util.Log.d("MapPage", "Reverse geocoding successful: " + fullAddress);
+        // A typed address being looked up is replaced by the current location
+        addressLookupPending = false;
+        addressResolver.resolveLocation(latitude, longitude, result -> {
+            if (result.status == AddressResolver.FOUND) {
+                android.util.Log.d("MapPage", "Reverse geocoding successful: " + result.address);
 
                 // Set the address in the input field
-                locationAddressInput.setText(fullAddress);
-
-                Toast.makeText(this, "📍 Address: " + fullAddress, Toast.LENGTH_LONG).show();
+                resolvedAddress = result.address;
+                locationAddressInput.setText(result.address);
 
+                Toast.makeText(this, "📍 Address: " + result.address, Toast.LENGTH_LONG).show();
             } else {
-                android.util.Log.d("MapPage", "No address found for coordinates");
                 // If no address found, show coordinates as fallback
                 String coordsAddress = "Lat: " + String.format("%.6f", latitude) + ", Lng: " + String.format("%.6f", longitude);
+                resolvedAddress = coordsAddress;
                 locationAddressInput.setText(coordsAddress);
-                Toast.makeText(this, "📍 Location found (coordinates only)", Toast.LENGTH_SHORT).show();
+                Toast.makeText(this, result.status == AddressResolver.NOT_FOUND
+                        ? "📍 Location found (coordinates only)"
+                        : "📍 Location found (address lookup failed)", Toast.LENGTH_SHORT).show();
             }
-
-        } catch (IOException e) {
-            android.util.Log.e("MapPage", "Reverse geocoding failed: " + e.getMessage());
-            // Fallback to coordinates if geocoding fails
-            String coordsAddress = "Lat: " + String.format("%.6f", latitude) + ", Lng: " + String.format("%.6f", longitude);
-            locationAddressInput.setText(coordsAddress);
-            Toast.makeText(this, "📍 Location found (address lookup failed)", Toast.LENGTH_SHORT).show();
-        } catch (Exception e) {
-            android.util.Log.e("MapPage", "Error in reverse geocoding: " + e.getMessage());
-            Toast.makeText(this, "❌ Error getting address", Toast.LENGTH_SHORT).show();
-        }
+        });
     }
 
     @Override
-    public void onStatusChanged(String provider, int status, Bundle extras) {}
-
-    @Override
-    public void onProviderEnabled(String provider) {}
-
-    @Override
-    public void onProviderDisabled(String provider) {}
+    protected void onDestroy() {
+        super.onDestroy();
+        if (addressResolver != null) {
+            addressResolver.cancel();
+        }
+        if (locationFixEngine != null) {
+            locationFixEngine.cancel();
+        }
+    }
 }
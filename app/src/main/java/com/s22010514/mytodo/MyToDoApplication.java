@@ -0,0 +1,19 @@
+package com.s22010514.mytodo;
+
+import android.app.Application;
+
+/**
+ * Process-wide start-up. Runs however the process was started, through an activity, a restored
+ * back stack, the reminder alarm or a reboot, so work that has to see every database write from
+ * the first one on belongs here rather than in the launcher activity.
+ */
+public class MyToDoApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Keep the alarm for the next due task armed, and re-arm it after every task write
+        ReminderScheduler.start(this);
+    }
+}
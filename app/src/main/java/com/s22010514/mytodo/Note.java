@@ -4,11 +4,18 @@ public class Note {
     private int id;
     private String title;
     private String body;
+    // True when body is only the start of the note, as loaded for the note list
+    private boolean bodyTruncated;
 
     public Note(int id, String title, String body) {
+        this(id, title, body, false);
+    }
+
+    public Note(int id, String title, String body, boolean bodyTruncated) {
         this.id = id;
         this.title = title;
         this.body = body;
+        this.bodyTruncated = bodyTruncated;
     }
 
     public int getId() {
@@ -22,4 +29,8 @@ public class Note {
     public String getBody() {
         return body;
     }
+
+    public boolean isBodyTruncated() {
+        return bodyTruncated;
+    }
 }
@@ -1,6 +1,5 @@
 package com.s22010514.mytodo;
 
-import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.view.LayoutInflater;
@@ -10,30 +9,60 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.cardview.widget.CardView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.button.MaterialButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class NoteAdapter extends RecyclerView.Adapter<NoteAdapter.NoteViewHolder> {
 
     private List<Note> noteList;
     private Context context;
-    private DatabaseHelper dbHelper;
+    private TodoRepository repository;
     private OnNoteDeletedListener onNoteDeletedListener;
+    // Where the undo message is shown
+    private RecyclerView recyclerView;
+    private OnSelectionChangedListener onSelectionChangedListener;
     private FirebaseAuth mAuth;
+    // IDs of the notes picked with a long press for a bulk action
+    private final Set<Integer> selectedNoteIds = new LinkedHashSet<>();
+
+    private static final int SELECTED_CARD_COLOR = 0xFFE8F5E9;
+    private static final int CARD_COLOR = 0xFFFFFFFF;
+    // Rebinds only the selected state of a row
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    // Preview text is measured and laid out here, so a bind only waits for it if the row is drawn first
+    private static final Executor textLayoutExecutor = Executors.newSingleThreadExecutor();
 
     public interface OnNoteDeletedListener {
         void onNoteDeleted();
+
+        // A deleted note was brought back with undo
+        void onNoteRestored();
+    }
+
+    public interface OnSelectionChangedListener {
+        void onSelectionChanged(int selectedCount);
     }
 
     public NoteAdapter(List<Note> noteList, Context context) {
         this.noteList = noteList;
         this.context = context;
-        this.dbHelper = new DatabaseHelper(context);
+        this.repository = new TodoRepository(context);
         this.mAuth = FirebaseAuth.getInstance();
     }
 
@@ -41,6 +70,67 @@ public class NoteAdapter extends RecyclerView.Adapter<NoteAdapter.NoteViewHolder
         this.onNoteDeletedListener = listener;
     }
 
+    public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        this.onSelectionChangedListener = listener;
+    }
+
+    // SELECTION - a long press starts selecting, then taps add or remove rows
+    public boolean isSelecting() {
+        return !selectedNoteIds.isEmpty();
+    }
+
+    public List<Integer> getSelectedNoteIds() {
+        return new ArrayList<>(selectedNoteIds);
+    }
+
+    public void selectAll() {
+        for (Note note : noteList) {
+            selectedNoteIds.add(note.getId());
+        }
+        notifySelectionChanged(RecyclerView.NO_POSITION);
+    }
+
+    public void clearSelection() {
+        if (selectedNoteIds.isEmpty()) {
+            return;
+        }
+        selectedNoteIds.clear();
+        notifySelectionChanged(RecyclerView.NO_POSITION);
+    }
+
+    private void toggleSelection(Note note, int position) {
+        boolean wasSelecting = isSelecting();
+        if (!selectedNoteIds.remove(note.getId())) {
+            selectedNoteIds.add(note.getId());
+        }
+        // Entering or leaving selection mode changes what a tap does on every row
+        notifySelectionChanged(wasSelecting == isSelecting() ? position : RecyclerView.NO_POSITION);
+    }
+
+    // Only the toggled row is rebound, or all of them when position is NO_POSITION
+    private void notifySelectionChanged(int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
+        } else {
+            notifyItemChanged(position, PAYLOAD_SELECTION);
+        }
+        if (onSelectionChangedListener != null) {
+            onSelectionChangedListener.onSelectionChanged(selectedNoteIds.size());
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        this.recyclerView = null;
+    }
+
     @NonNull
     @Override
     public NoteViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -54,12 +144,31 @@ public class NoteAdapter extends RecyclerView.Adapter<NoteAdapter.NoteViewHolder
         holder.bind(note, position);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull NoteViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && isSelectionOnly(payloads)) {
+            holder.bindSelection(noteList.get(position));
+        } else {
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+
+    private static boolean isSelectionOnly(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_SELECTION) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public int getItemCount() {
         return noteList.size();
     }
 
-    private void deleteNote(Note note, int position) {
+    // Deleted notes stay as tombstones for a while, so there's no confirmation, just an undo
+    private void deleteNote(Note note) {
         // Check user authentication
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser == null) {
@@ -69,47 +178,71 @@ public class NoteAdapter extends RecyclerView.Adapter<NoteAdapter.NoteViewHolder
 
         String currentUserId = currentUser.getUid();
 
-        new AlertDialog.Builder(context, android.R.style.Theme_Material_Dialog_Alert)
-                .setTitle("🗑️ Delete Note")
-                .setMessage("Are you sure you want to delete this note?\n\n\"" + note.getTitle() + "\"\n\nThis action cannot be undone.")
-                .setPositiveButton("DELETE", (dialog, which) -> {
-                    // Use secure delete method with user ID verification
-                    boolean isDeleted = dbHelper.deleteNoteById(String.valueOf(note.getId()), currentUserId);
-                    if (isDeleted) {
-                        noteList.remove(position);
-                        notifyItemRemoved(position);
-                        notifyItemRangeChanged(position, noteList.size());
-
-                        if (onNoteDeletedListener != null) {
-                            onNoteDeletedListener.onNoteDeleted();
-                        }
-
-                        Toast.makeText(context, "✅ Note deleted successfully", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(context, "❌ Failed to delete note or unauthorized access", Toast.LENGTH_SHORT).show();
-                    }
-                })
-                .setNegativeButton("CANCEL", null)
-                .setIcon(android.R.drawable.ic_dialog_alert)
-                .show();
+        // Use secure delete method with user ID verification
+        repository.deleteNote(note.getId(), currentUserId, isDeleted -> {
+            if (isDeleted) {
+                // The list may have changed while the delete ran, so look the note up again
+                int currentPosition = noteList.indexOf(note);
+                if (currentPosition != -1) {
+                    noteList.remove(currentPosition);
+                    notifyItemRemoved(currentPosition);
+                    notifyItemRangeChanged(currentPosition, noteList.size());
+                }
+
+                if (onNoteDeletedListener != null) {
+                    onNoteDeletedListener.onNoteDeleted();
+                }
+
+                UndoSnackbar.show(recyclerView, "🗑️ Note deleted", () ->
+                        repository.restoreNotes(Collections.singletonList(note.getId()), currentUserId, restored -> {
+                            if (restored > 0 && onNoteDeletedListener != null) {
+                                onNoteDeletedListener.onNoteRestored();
+                            }
+                        }));
+            } else {
+                Toast.makeText(context, "❌ Failed to delete note or unauthorized access", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void editNote(Note note) {
+        if (!note.isBodyTruncated()) {
+            startEditing(note, note.getBody());
+            return;
+        }
+
+        // The row only holds a preview, the editor needs the whole text
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        if (currentUser == null) {
+            Toast.makeText(context, "❌ Authentication error. Please login again.", Toast.LENGTH_LONG).show();
+            return;
+        }
+        repository.loadNoteBody(note.getId(), currentUser.getUid(), body -> {
+            if (body != null) {
+                startEditing(note, body);
+            } else {
+                Toast.makeText(context, "❌ Failed to load note", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void startEditing(Note note, String body) {
         Intent intent = new Intent(context, AddNotePage.class);
         intent.putExtra("noteId", note.getId());
         intent.putExtra("noteTitle", note.getTitle());
-        intent.putExtra("noteBody", note.getBody());
+        intent.putExtra("noteBody", body);
         context.startActivity(intent);
     }
 
     class NoteViewHolder extends RecyclerView.ViewHolder {
 
         private TextView noteTitle;
-        private TextView noteBody;
+        private AppCompatTextView noteBody;
         private TextView noteBodyExpanded;
         private MaterialButton editNoteBtn;
         private MaterialButton deleteNoteBtn;
         private boolean isExpanded = false;
+        private Note boundNote;
 
         public NoteViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -121,33 +254,51 @@ public class NoteAdapter extends RecyclerView.Adapter<NoteAdapter.NoteViewHolder
         }
 
         public void bind(Note note, int position) {
+            boundNote = note;
+            bindSelection(note);
+
             noteTitle.setText(note.getTitle());
 
-            // Handle body visibility and expansion
+            // Only the collapsed preview is bound; the expanded view gets its text when it is opened
             String body = note.getBody();
-            if (body != null && !body.trim().isEmpty()) {
-                noteBody.setText(body);
+            boolean hasBody = body != null && !body.trim().isEmpty();
+            if (hasBody) {
+                noteBody.setTextFuture(PrecomputedTextCompat.getTextFuture(body,
+                        TextViewCompat.getTextMetricsParams(noteBody), textLayoutExecutor));
                 noteBody.setVisibility(View.VISIBLE);
-                noteBodyExpanded.setText(body);
-
-                // Set up click listener for expanding/collapsing body
-                itemView.setOnClickListener(v -> toggleBodyExpansion());
             } else {
                 noteBody.setVisibility(View.GONE);
                 noteBodyExpanded.setVisibility(View.GONE);
-                itemView.setOnClickListener(null);
             }
 
+            // While selecting, taps pick rows; otherwise they expand or collapse the body
+            itemView.setOnClickListener(v -> {
+                if (isSelecting()) {
+                    toggleSelection(note, getBindingAdapterPosition());
+                } else if (hasBody) {
+                    toggleBodyExpansion(note);
+                }
+            });
+            itemView.setOnLongClickListener(v -> {
+                toggleSelection(note, getBindingAdapterPosition());
+                return true;
+            });
+
             // Reset expanded state when recycling views
             isExpanded = false;
             noteBodyExpanded.setVisibility(View.GONE);
 
             // Set up click listeners for action buttons
             editNoteBtn.setOnClickListener(v -> editNote(note));
-            deleteNoteBtn.setOnClickListener(v -> deleteNote(note, position));
+            deleteNoteBtn.setOnClickListener(v -> deleteNote(note));
+        }
+
+        void bindSelection(Note note) {
+            boolean selected = selectedNoteIds.contains(note.getId());
+            ((CardView) itemView).setCardBackgroundColor(selected ? SELECTED_CARD_COLOR : CARD_COLOR);
         }
 
-        private void toggleBodyExpansion() {
+        private void toggleBodyExpansion(Note note) {
             if (isExpanded) {
                 // Collapse
                 noteBodyExpanded.setVisibility(View.GONE);
@@ -158,7 +309,27 @@ public class NoteAdapter extends RecyclerView.Adapter<NoteAdapter.NoteViewHolder
                 noteBody.setVisibility(View.GONE);
                 noteBodyExpanded.setVisibility(View.VISIBLE);
                 isExpanded = true;
+                if (note.isBodyTruncated()) {
+                    // Show the preview until the rest of the note is read
+                    noteBodyExpanded.setText(note.getBody() + "…");
+                    loadFullBody(note);
+                } else {
+                    noteBodyExpanded.setText(note.getBody());
+                }
+            }
+        }
+
+        private void loadFullBody(Note note) {
+            FirebaseUser currentUser = mAuth.getCurrentUser();
+            if (currentUser == null) {
+                return;
             }
+            repository.loadNoteBody(note.getId(), currentUser.getUid(), body -> {
+                // The row may have been collapsed or recycled for another note meanwhile
+                if (body != null && isExpanded && boundNote == note) {
+                    noteBodyExpanded.setText(body);
+                }
+            });
         }
     }
 }
@@ -1,12 +1,20 @@
 package com.s22010514.mytodo;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -15,20 +23,36 @@ import com.google.android.material.button.MaterialButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public class NotesPage extends AppCompatActivity implements NoteAdapter.OnNoteDeletedListener {
+public class NotesPage extends AppCompatActivity implements NoteAdapter.OnNoteDeletedListener,
+        NoteAdapter.OnSelectionChangedListener {
 
     private RecyclerView notesRecyclerView;
     private NoteAdapter noteAdapter;
     private List<Note> noteList;
-    private DatabaseHelper dbHelper;
+    private TodoRepository repository;
     private TextView noteCountTxt;
     private LinearLayout emptyStateLayout;
     private MaterialButton addNewNoteBtn;
+    private ActionMode selectionMode;
     private FirebaseAuth mAuth;
     private String currentUserId;
+    private CachedList<Note> cachedNotes;
+    private EditText noteSearchInput;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::runSearch;
+    // Bumped whenever the list switches between all notes and search hits, so late results are dropped
+    private int listGeneration = 0;
+    private boolean isLoadingSearchHits = false;
+
+    // Wait for typing to pause this long before searching
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+    // Fetch more hits when this many rows are left below the last visible one
+    private static final int PREFETCH_DISTANCE = 10;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -54,11 +78,12 @@ public class NotesPage extends AppCompatActivity implements NoteAdapter.OnNoteDe
         // Initialize UI elements
         initializeViews();
 
-        // Initialize DatabaseHelper
-        dbHelper = new DatabaseHelper(this);
+        // Initialize the repository (database work runs off the main thread)
+        repository = new TodoRepository(this);
 
-        // Initialize the list to hold Notes
-        noteList = new ArrayList<>();
+        // The list survives rotation, so onResume can skip the reload when nothing changed
+        cachedNotes = getCachedNotes();
+        noteList = cachedNotes.items;
 
         // Set up RecyclerView
         setupRecyclerView();
@@ -66,8 +91,7 @@ public class NotesPage extends AppCompatActivity implements NoteAdapter.OnNoteDe
         // Set up click listeners
         setupClickListeners();
 
-        // Load notes from database
-        loadNotesFromDatabase();
+        // Notes are loaded in onResume
         updateUI();
     }
 
@@ -76,13 +100,30 @@ public class NotesPage extends AppCompatActivity implements NoteAdapter.OnNoteDe
         noteCountTxt = findViewById(R.id.noteCountTxt);
         emptyStateLayout = findViewById(R.id.emptyStateLayout);
         addNewNoteBtn = findViewById(R.id.addNewNoteBtn);
+        noteSearchInput = findViewById(R.id.noteSearchInput);
     }
 
     private void setupRecyclerView() {
-        notesRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        notesRecyclerView.setLayoutManager(layoutManager);
         noteAdapter = new NoteAdapter(noteList, this);
         noteAdapter.setOnNoteDeletedListener(this);
+        noteAdapter.setOnSelectionChangedListener(this);
         notesRecyclerView.setAdapter(noteAdapter);
+
+        // Search hits are fetched a page at a time as the user scrolls
+        notesRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0 || cachedNotes.searchQuery.isEmpty() || isLoadingSearchHits
+                        || !cachedNotes.hasMoreSearchHits) {
+                    return;
+                }
+                if (layoutManager.findLastVisibleItemPosition() >= noteList.size() - PREFETCH_DISTANCE) {
+                    loadSearchHits(false);
+                }
+            }
+        });
     }
 
     private void setupClickListeners() {
@@ -90,6 +131,147 @@ public class NotesPage extends AppCompatActivity implements NoteAdapter.OnNoteDe
             Intent intent = new Intent(NotesPage.this, AddNotePage.class);
             startActivity(intent);
         });
+
+        // Search as the user types, once they pause
+        noteSearchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchHandler.removeCallbacks(searchRunnable);
+                searchHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
+        });
+    }
+
+    @Override
+    public void onSelectionChanged(int selectedCount) {
+        if (selectedCount == 0) {
+            if (selectionMode != null) {
+                selectionMode.finish();
+            }
+            return;
+        }
+        if (selectionMode == null) {
+            selectionMode = startSupportActionMode(selectionCallback);
+        }
+        if (selectionMode != null) {
+            selectionMode.setTitle(selectedCount + " selected");
+        }
+    }
+
+    // Contextual bar shown while notes are selected
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.note_selection_menu, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            int itemId = item.getItemId();
+            if (itemId == R.id.delete_selected) {
+                deleteSelectedNotes();
+                return true;
+            } else if (itemId == R.id.select_all) {
+                noteAdapter.selectAll();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            noteAdapter.clearSelection();
+        }
+    };
+
+    // Deletes all selected notes in one transaction, they can be brought back from the undo message
+    private void deleteSelectedNotes() {
+        List<Integer> ids = noteAdapter.getSelectedNoteIds();
+        repository.deleteNotes(ids, currentUserId, deletedCount -> {
+            if (isDestroyed()) {
+                return;
+            }
+            Set<Integer> deletedIds = new HashSet<>(ids);
+            for (int i = noteList.size() - 1; i >= 0; i--) {
+                if (deletedIds.contains(noteList.get(i).getId())) {
+                    noteList.remove(i);
+                    noteAdapter.notifyItemRemoved(i);
+                }
+            }
+            if (selectionMode != null) {
+                selectionMode.finish();
+            } else {
+                noteAdapter.clearSelection();
+            }
+            updateUI();
+            UndoSnackbar.show(notesRecyclerView, "🗑️ Deleted " + deletedCount +
+                    (deletedCount == 1 ? " note" : " notes"), () ->
+                    repository.restoreNotes(ids, currentUserId, restoredCount -> {
+                        if (!isDestroyed()) {
+                            refreshNotesList();
+                        }
+                    }));
+        });
+    }
+
+    // Switches the list between search hits and all notes when the search text has changed
+    private void runSearch() {
+        String query = noteSearchInput.getText().toString().trim();
+        if (query.equals(cachedNotes.searchQuery)) {
+            return;
+        }
+        cachedNotes.searchQuery = query;
+        listGeneration++;
+
+        if (query.isEmpty()) {
+            // Back to all notes, the list has to be reloaded in full
+            cachedNotes.version = -1;
+            cachedNotes.searchPager = null;
+            refreshNotesList();
+        } else {
+            loadSearchHits(true);
+        }
+    }
+
+    // Loads a page of search hits, replacing the list for the first page and appending after that
+    private void loadSearchHits(boolean firstPage) {
+        int generation = listGeneration;
+        isLoadingSearchHits = true;
+        if (firstPage) {
+            // Later pages must not mark changes made since the first one as seen
+            cachedNotes.version = DataChangeBus.getInstance().getVersion(DataChangeBus.TABLE_NOTES);
+            cachedNotes.searchPager = repository.createNoteSearchPager(cachedNotes.searchQuery, currentUserId);
+        }
+        repository.loadNoteSearchHits(cachedNotes.searchPager, hits -> {
+            if (isDestroyed() || generation != listGeneration) {
+                return;
+            }
+            isLoadingSearchHits = false;
+            cachedNotes.hasMoreSearchHits = hits.size() == DatabaseHelper.SEARCH_PAGE_SIZE;
+            if (firstPage) {
+                noteList.clear();
+                noteList.addAll(hits);
+                noteAdapter.notifyDataSetChanged();
+            } else {
+                int start = noteList.size();
+                noteList.addAll(hits);
+                noteAdapter.notifyItemRangeInserted(start, hits.size());
+            }
+            updateUI();
+        });
     }
 
     @Override
@@ -99,20 +281,108 @@ public class NotesPage extends AppCompatActivity implements NoteAdapter.OnNoteDe
         refreshNotesList();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchHandler.removeCallbacks(searchRunnable);
+    }
+
     @Override
     public void onNoteDeleted() {
         // This method is called when a note is deleted from the adapter
         updateUI();
     }
 
+    @Override
+    public void onNoteRestored() {
+        refreshNotesList();
+    }
+
     // Method to refresh the notes list
     private void refreshNotesList() {
-        noteList.clear();
-        loadNotesFromDatabase();
-        noteAdapter.notifyDataSetChanged();
+        DataChangeBus changeBus = DataChangeBus.getInstance();
+        long currentVersion = changeBus.getVersion(DataChangeBus.TABLE_NOTES);
+        if (cachedNotes.version == currentVersion) {
+            updateUI();
+            return;
+        }
+        if (!cachedNotes.searchQuery.isEmpty()) {
+            // Edits can change which notes match, so run the search again
+            listGeneration++;
+            loadSearchHits(true);
+            return;
+        }
+
+        List<DataChangeBus.Change> changes = cachedNotes.version < 0 ? null
+                : changeBus.getChangesSince(DataChangeBus.TABLE_NOTES, cachedNotes.version);
+        cachedNotes.version = currentVersion;
+        if (changes == null) {
+            loadNotesFromDatabase();
+        } else {
+            // Only fetch the notes that changed since the list was loaded
+            int generation = listGeneration;
+            repository.loadChangedNotes(currentUserId, DataChangeBus.changedRowIds(changes), changedNotes -> {
+                if (generation == listGeneration) {
+                    applyNoteChanges(changedNotes);
+                }
+            });
+        }
+    }
+
+    // Applies row-level changes to the loaded notes
+    private void applyNoteChanges(Map<Integer, Note> changedNotes) {
+        if (isDestroyed()) {
+            return;
+        }
+        if (changedNotes == null) {
+            loadNotesFromDatabase();
+            return;
+        }
+
+        for (Map.Entry<Integer, Note> entry : changedNotes.entrySet()) {
+            int position = indexOfNote(entry.getKey());
+            Note note = entry.getValue();
+            if (note == null) {
+                if (position != -1) {
+                    noteList.remove(position);
+                    noteAdapter.notifyItemRemoved(position);
+                }
+            } else if (position != -1) {
+                noteList.set(position, note);
+                noteAdapter.notifyItemChanged(position);
+            } else {
+                // Notes are listed in insertion order, so new ones go at the end and
+                // restored ones go back to where they were
+                int insertAt = insertionIndexOfNote(note.getId());
+                noteList.add(insertAt, note);
+                noteAdapter.notifyItemInserted(insertAt);
+            }
+        }
         updateUI();
     }
 
+    private int indexOfNote(int noteId) {
+        for (int i = 0; i < noteList.size(); i++) {
+            if (noteList.get(i).getId() == noteId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int insertionIndexOfNote(int noteId) {
+        int position = noteList.size();
+        while (position > 0 && noteList.get(position - 1).getId() > noteId) {
+            position--;
+        }
+        return position;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CachedList<Note> getCachedNotes() {
+        return new ViewModelProvider(this).get(CachedList.class);
+    }
+
     // Method to load notes from the database with user filtering
     private void loadNotesFromDatabase() {
         // Ensure user is authenticated before loading data
@@ -122,29 +392,17 @@ public class NotesPage extends AppCompatActivity implements NoteAdapter.OnNoteDe
             return;
         }
 
-        // Get a cursor to notes for the current user only
-        Cursor cursor = dbHelper.getAllNotes(currentUserId);
-
-        // Check if the cursor has data
-        if (cursor.moveToFirst()) {
-            // Iterate through the cursor and populate the notes list
-            do {
-                int colNoteId = cursor.getColumnIndex(DatabaseHelper.COL_1);
-                int colNoteTitle = cursor.getColumnIndex(DatabaseHelper.COL_2);
-                int colNoteBody = cursor.getColumnIndex(DatabaseHelper.COL_3);
-
-                if (colNoteId != -1 && colNoteTitle != -1 && colNoteBody != -1) {
-                    int id = cursor.getInt(colNoteId);
-                    String title = cursor.getString(colNoteTitle);
-                    String body = cursor.getString(colNoteBody);
-                    Note note = new Note(id, title, body);
-                    noteList.add(note);
-                }
-            } while (cursor.moveToNext());
-        }
-
-        // Close the cursor to free resources
-        cursor.close();
+        // Load notes for the current user only
+        int generation = listGeneration;
+        repository.loadNotes(currentUserId, notes -> {
+            if (isDestroyed() || generation != listGeneration) {
+                return;
+            }
+            noteList.clear();
+            noteList.addAll(notes);
+            noteAdapter.notifyDataSetChanged();
+            updateUI();
+        });
     }
 
     private void redirectToLogin() {
@@ -157,7 +415,13 @@ public class NotesPage extends AppCompatActivity implements NoteAdapter.OnNoteDe
     private void updateUI() {
         int noteCount = noteList.size();
 
-        if (noteCount == 0) {
+        if (!cachedNotes.searchQuery.isEmpty()) {
+            // Keep the list visible while searching so an empty result doesn't look like no notes at all
+            String more = cachedNotes.hasMoreSearchHits ? "+" : "";
+            noteCountTxt.setText(noteCount + more + (noteCount == 1 ? " result" : " results"));
+            emptyStateLayout.setVisibility(View.GONE);
+            notesRecyclerView.setVisibility(View.VISIBLE);
+        } else if (noteCount == 0) {
             noteCountTxt.setText("No notes");
             emptyStateLayout.setVisibility(View.VISIBLE);
             notesRecyclerView.setVisibility(View.GONE);
@@ -0,0 +1,65 @@
+package com.s22010514.mytodo;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Works out the distance and the "📏 1.2km away" label of every saved place in one pass off
+ * the main thread, so a location update costs the list a map lookup per row instead of a
+ * distance calculation and a String.format on every bind.
+ */
+public class PlaceDistanceCalculator {
+
+    public static final String UNKNOWN_DISTANCE_LABEL = "📏 --km away";
+
+    // One thread, so passes finish in the order the location updates came in
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static class Result {
+        // Keyed by location task ID
+        public final Map<Integer, Double> distances;
+        public final Map<Integer, String> labels;
+
+        Result(Map<Integer, Double> distances, Map<Integer, String> labels) {
+            this.distances = distances;
+            this.labels = labels;
+        }
+    }
+
+    private PlaceDistanceCalculator() {
+    }
+
+    // places must not be modified while the pass runs, pass a copy of the adapter's list
+    public static void calculate(List<LocationTask> places, double latitude, double longitude,
+                                 TodoRepository.Callback<Result> callback) {
+        executor.execute(() -> {
+            Map<Integer, Double> distances = new HashMap<>(places.size() * 2);
+            Map<Integer, String> labels = new HashMap<>(places.size() * 2);
+            for (LocationTask place : places) {
+                double distance = GeofenceIndex.distanceInMeters(latitude, longitude,
+                        place.getLatitude(), place.getLongitude());
+                distances.put(place.getId(), distance);
+                labels.put(place.getId(), formatLabel(distance));
+            }
+            Result result = new Result(distances, labels);
+            mainHandler.post(() -> callback.onResult(result));
+        });
+    }
+
+    // Whole meters under a kilometer, otherwise kilometers to one decimal, built without String.format
+    static String formatLabel(double distanceInMeters) {
+        long meters = Math.round(distanceInMeters);
+        if (meters < 1000) {
+            return "📏 " + meters + "m away";
+        }
+        long tenthsOfKm = Math.round(distanceInMeters / 100);
+        return "📏 " + (tenthsOfKm / 10) + "." + (tenthsOfKm % 10) + "km away";
+    }
+}
@@ -0,0 +1,159 @@
+package com.s22010514.mytodo;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes profile pictures off the main thread at the size they are shown, keeps recent ones
+ * in a memory cache keyed by user UID and stores each user's picture on disk already scaled
+ * down, so reopening AccountPage only has to decode a small thumbnail, or nothing at all.
+ */
+public class ProfileImageLoader {
+
+    private static final String TAG = "ProfileImageLoader";
+    private static final String PROFILE_DIR = "profiles";
+    private static final int JPEG_QUALITY = 85;
+
+    // Profile pictures are small, a few users' avatars fit comfortably in 4 MB
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private static final LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String userId, Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
+        }
+    };
+
+    // One decoder thread, so saving a new picture and loading it can't race on the same file
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final File profileDir;
+    private final int targetSize;
+
+    // targetSize is the edge length in pixels of the square view the picture is shown in
+    public ProfileImageLoader(Context context, int targetSize) {
+        this.profileDir = new File(context.getApplicationContext().getFilesDir(), PROFILE_DIR);
+        this.targetSize = targetSize;
+    }
+
+    public File getProfileFile(String userId) {
+        return new File(profileDir, "profile_" + userId + ".jpg");
+    }
+
+    /**
+     * Loads the user's saved picture; the callback gets null when there is none.
+     * A cached picture is delivered before this returns, so it shows without a blank frame.
+     * Pictures saved full size by earlier versions are scaled down and rewritten on first load.
+     */
+    public void load(String userId, TodoRepository.Callback<Bitmap> callback) {
+        Bitmap cached = memoryCache.get(userId);
+        if (cached != null) {
+            callback.onResult(cached);
+            return;
+        }
+        executor.execute(() -> {
+            Bitmap bitmap = null;
+            File profileFile = getProfileFile(userId);
+            if (profileFile.exists()) {
+                BitmapFactory.Options bounds = readBounds(profileFile.getAbsolutePath());
+                bitmap = decodeScaled(profileFile.getAbsolutePath(), bounds);
+                if (bitmap != null) {
+                    if (Math.min(bounds.outWidth, bounds.outHeight) > targetSize * 2) {
+                        writeThumbnail(bitmap, profileFile);
+                    }
+                    memoryCache.put(userId, bitmap);
+                }
+            }
+            final Bitmap result = bitmap;
+            mainHandler.post(() -> callback.onResult(result));
+        });
+    }
+
+    /**
+     * Scales a freshly taken photo down to the view size, saves it as the user's picture
+     * and deletes the full-size photo. The callback gets null if the photo couldn't be read or saved.
+     */
+    public void saveFromPhoto(String userId, String photoPath, TodoRepository.Callback<Bitmap> callback) {
+        executor.execute(() -> {
+            Bitmap bitmap = decodeScaled(photoPath, readBounds(photoPath));
+            if (bitmap != null && writeThumbnail(bitmap, getProfileFile(userId))) {
+                memoryCache.put(userId, bitmap);
+            } else {
+                bitmap = null;
+            }
+            new File(photoPath).delete();
+            final Bitmap result = bitmap;
+            mainHandler.post(() -> callback.onResult(result));
+        });
+    }
+
+    private static BitmapFactory.Options readBounds(String path) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        return options;
+    }
+
+    // Decodes at the largest power-of-two reduction that still covers the view, then scales to fit it exactly
+    private Bitmap decodeScaled(String path, BitmapFactory.Options bounds) {
+        int width = bounds.outWidth;
+        int height = bounds.outHeight;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (Math.min(width, height) / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeFile(path, options);
+        if (decoded == null) {
+            return null;
+        }
+
+        // The view crops to a square, so only the shorter side needs to match it
+        int shortSide = Math.min(decoded.getWidth(), decoded.getHeight());
+        if (shortSide <= targetSize) {
+            return decoded;
+        }
+        float scale = (float) targetSize / shortSide;
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded,
+                Math.round(decoded.getWidth() * scale), Math.round(decoded.getHeight() * scale), true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+
+    // Writes to a temporary file first so a crash can't leave a half-written picture behind
+    private boolean writeThumbnail(Bitmap bitmap, File file) {
+        if (!profileDir.exists() && !profileDir.mkdirs()) {
+            return false;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("JPEG compression failed");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save profile picture", e);
+            temp.delete();
+            return false;
+        }
+        return temp.renameTo(file);
+    }
+}
@@ -0,0 +1,200 @@
+package com.s22010514.mytodo;
+
+import android.app.AlarmManager;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Due date reminders for tasks. Only one alarm is ever armed, for the next open task of the
+ * signed in user, found with a MIN(DATE) seek on the task list index. When it fires, every task that
+ * fell due since the last reminder goes into one notification and the alarm is re-armed for the
+ * next one. Task writes re-arm it through the DataChangeBus, so nothing polls and the cost
+ * doesn't grow with the number of dated tasks.
+ */
+public class ReminderScheduler {
+
+    private static final String TAG = "ReminderScheduler";
+
+    public static final String ACTION_TASK_DUE = "com.s22010514.mytodo.ACTION_TASK_DUE";
+
+    private static final String CHANNEL_ID = "task_reminder_channel";
+    private static final int NOTIFICATION_ID = 2400;
+    private static final int REQUEST_CODE = 2400;
+    // Titles listed in the notification, the rest are only counted
+    private static final int MAX_LISTED_TASKS = 5;
+
+    // Per user, the due date up to which reminders were already shown
+    private static final String PREFS_NAME = "task_reminders";
+    private static final String KEY_NOTIFIED_UNTIL = "notified_until_";
+
+    // One thread, so re-arms and alarms never race each other
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final AtomicBoolean started = new AtomicBoolean();
+    // A bulk write publishes many changes, they only need one re-arm
+    private static final AtomicBoolean rescheduleQueued = new AtomicBoolean();
+
+    private ReminderScheduler() {
+    }
+
+    // Arms the alarm and re-arms it after every task write from now on, called by MyToDoApplication
+    public static void start(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (started.compareAndSet(false, true)) {
+            DataChangeBus.getInstance().addListener((table, type) -> {
+                if (DataChangeBus.TABLE_TASKS.equals(table)) {
+                    reschedule(appContext);
+                }
+            });
+        }
+        reschedule(appContext);
+    }
+
+    // Re-arms for the current user, e.g. after signing in
+    public static void reschedule(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (rescheduleQueued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                rescheduleQueued.set(false);
+                arm(appContext);
+            });
+        }
+    }
+
+    // Drops the alarm, called when signing out
+    public static void cancel(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(alarmIntent(context.getApplicationContext()));
+    }
+
+    // Work for TaskReminderReceiver, which has to call finish on the pending result
+    static void onAlarm(Context context, BroadcastReceiver.PendingResult pendingResult) {
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            try {
+                notifyDueTasks(appContext);
+                arm(appContext);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to handle reminder alarm", e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    private static void arm(Context context) {
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser == null) {
+            cancel(context);
+            return;
+        }
+        String userId = currentUser.getUid();
+        long nextDue = DatabaseHelper.getInstance(context).getNextDueTaskDate(userId, getNotifiedUntil(context, userId));
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (nextDue < 0) {
+            alarmManager.cancel(alarmIntent(context));
+            return;
+        }
+        // Inexact is fine for a due date and needs no exact alarm permission; it still fires in Doze
+        alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, nextDue, alarmIntent(context));
+    }
+
+    private static void notifyDueTasks(Context context) {
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser == null) {
+            return;
+        }
+        String userId = currentUser.getUid();
+        long notifiedUntil = getNotifiedUntil(context, userId);
+        long now = System.currentTimeMillis();
+
+        int dueCount;
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        String firstTitle = null;
+        try (Cursor cursor = DatabaseHelper.getInstance(context).getDueTasks(userId, notifiedUntil, now)) {
+            dueCount = cursor.getCount();
+            while (cursor.moveToNext() && cursor.getPosition() < MAX_LISTED_TASKS) {
+                String title = cursor.getString(1);
+                if (firstTitle == null) {
+                    firstTitle = title;
+                }
+                style.addLine(title);
+            }
+        }
+        setNotifiedUntil(context, userId, now);
+        if (dueCount == 0) {
+            // Completed or moved since the alarm was armed
+            return;
+        }
+        if (dueCount > MAX_LISTED_TASKS) {
+            style.setSummaryText("+" + (dueCount - MAX_LISTED_TASKS) + " more");
+        }
+        showNotification(context, dueCount, firstTitle, style);
+    }
+
+    private static void showNotification(Context context, int dueCount, String firstTitle,
+                                         NotificationCompat.InboxStyle style) {
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Task Reminders",
+                    NotificationManager.IMPORTANCE_HIGH);
+            channel.setDescription("Reminders for tasks that are due");
+            notificationManager.createNotificationChannel(channel);
+        }
+
+        Intent intent = new Intent(context, TaskListPage.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent, PendingIntent.FLAG_IMMUTABLE);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_dialog_info)
+                .setContentTitle(dueCount == 1 ? "⏰ Task due" : "⏰ " + dueCount + " tasks due")
+                .setContentText(firstTitle)
+                .setStyle(style)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true);
+
+        // One notification, replaced by the next reminder instead of piling up
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+    }
+
+    private static PendingIntent alarmIntent(Context context) {
+        Intent intent = new Intent(context, TaskReminderReceiver.class).setAction(ACTION_TASK_DUE);
+        return PendingIntent.getBroadcast(context, REQUEST_CODE, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    // Starts at the first run, so tasks that were overdue before reminders existed don't all fire at once
+    private static long getNotifiedUntil(Context context, String userId) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long notifiedUntil = prefs.getLong(KEY_NOTIFIED_UNTIL + userId, -1);
+        if (notifiedUntil < 0) {
+            notifiedUntil = System.currentTimeMillis();
+            setNotifiedUntil(context, userId, notifiedUntil);
+        }
+        return notifiedUntil;
+    }
+
+    private static void setNotifiedUntil(Context context, String userId, long notifiedUntil) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong(KEY_NOTIFIED_UNTIL + userId, notifiedUntil)
+                .apply();
+    }
+}
@@ -3,7 +3,6 @@ package com.s22010514.mytodo;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
@@ -16,6 +15,7 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -23,21 +23,25 @@ import com.google.android.material.button.MaterialButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class SavedPlacePage extends AppCompatActivity implements LocationTaskAdapter.OnLocationTaskDeletedListener, LocationListener {
 
     private RecyclerView locationTasksRecyclerView;
     private LocationTaskAdapter locationTaskAdapter;
     private List<LocationTask> locationTaskList;
-    private DatabaseHelper dbHelper;
+    private TodoRepository repository;
     private TextView locationCountTxt;
     private LinearLayout emptyStateLayout;
     private MaterialButton addLocationTaskBtn;
+    private MaterialButton sortLocationTasksBtn;
     private LocationManager locationManager;
     private FirebaseAuth mAuth;
     private String currentUserId;
+    private CachedList<LocationTask> cachedLocationTasks;
+
+    private static final String STATE_SORT_BY_NEAREST = "sortByNearest";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -64,20 +68,24 @@ public class SavedPlacePage extends AppCompatActivity implements LocationTaskAda
         initializeViews();
 
         // Initialize services
-        dbHelper = new DatabaseHelper(this);
+        repository = new TodoRepository(this);
         locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
 
-        // Initialize the list
-        locationTaskList = new ArrayList<>();
+        // The list survives rotation, so onResume can skip the reload when nothing changed
+        cachedLocationTasks = getCachedLocationTasks();
+        locationTaskList = cachedLocationTasks.items;
 
         // Set up RecyclerView
         setupRecyclerView();
+        if (savedInstanceState != null && savedInstanceState.getBoolean(STATE_SORT_BY_NEAREST)) {
+            locationTaskAdapter.setSortByNearest(true);
+        }
+        updateSortButton();
 
         // Set up click listeners
         setupClickListeners();
 
-        // Load location tasks from database
-        loadLocationTasksFromDatabase();
+        // Location tasks are loaded in onResume
         updateUI();
 
         // Get current location for distance calculations
@@ -96,6 +104,7 @@ public class SavedPlacePage extends AppCompatActivity implements LocationTaskAda
         locationCountTxt = findViewById(R.id.locationCountTxt);
         emptyStateLayout = findViewById(R.id.emptyStateLayout);
         addLocationTaskBtn = findViewById(R.id.addLocationTaskBtn);
+        sortLocationTasksBtn = findViewById(R.id.sortLocationTasksBtn);
     }
 
     private void setupRecyclerView() {
@@ -110,6 +119,24 @@ public class SavedPlacePage extends AppCompatActivity implements LocationTaskAda
             Intent intent = new Intent(SavedPlacePage.this, MapPage.class);
             startActivity(intent);
         });
+
+        sortLocationTasksBtn.setOnClickListener(v -> {
+            locationTaskAdapter.setSortByNearest(!locationTaskAdapter.isSortByNearest());
+            updateSortButton();
+            locationTasksRecyclerView.scrollToPosition(0);
+        });
+    }
+
+    private void updateSortButton() {
+        sortLocationTasksBtn.setText(locationTaskAdapter.isSortByNearest() ? "📏 Nearest" : "🕒 Newest");
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (locationTaskAdapter != null) {
+            outState.putBoolean(STATE_SORT_BY_NEAREST, locationTaskAdapter.isSortByNearest());
+        }
     }
 
     @Override
@@ -117,13 +144,77 @@ public class SavedPlacePage extends AppCompatActivity implements LocationTaskAda
         updateUI();
     }
 
+    @Override
+    public void onLocationTaskRestored() {
+        refreshLocationTaskList();
+    }
+
     private void refreshLocationTaskList() {
-        locationTaskList.clear();
-        loadLocationTasksFromDatabase();
-        locationTaskAdapter.notifyDataSetChanged();
+        DataChangeBus changeBus = DataChangeBus.getInstance();
+        long currentVersion = changeBus.getVersion(DataChangeBus.TABLE_LOCATION_TASKS);
+        if (cachedLocationTasks.version == currentVersion) {
+            updateUI();
+            return;
+        }
+
+        List<DataChangeBus.Change> changes = cachedLocationTasks.version < 0 ? null
+                : changeBus.getChangesSince(DataChangeBus.TABLE_LOCATION_TASKS, cachedLocationTasks.version);
+        cachedLocationTasks.version = currentVersion;
+        if (changes == null) {
+            loadLocationTasksFromDatabase();
+        } else {
+            // Only fetch the location tasks that changed since the list was loaded
+            repository.loadChangedLocationTasks(currentUserId, DataChangeBus.changedRowIds(changes),
+                    this::applyLocationTaskChanges);
+        }
+    }
+
+    // Applies row-level changes to the loaded location tasks
+    private void applyLocationTaskChanges(Map<Integer, LocationTask> changedLocationTasks) {
+        if (isDestroyed()) {
+            return;
+        }
+        if (changedLocationTasks == null) {
+            loadLocationTasksFromDatabase();
+            return;
+        }
+
+        for (Map.Entry<Integer, LocationTask> entry : changedLocationTasks.entrySet()) {
+            int position = indexOfLocationTask(entry.getKey());
+            LocationTask locationTask = entry.getValue();
+            if (locationTask == null) {
+                if (position != -1) {
+                    locationTaskList.remove(position);
+                    locationTaskAdapter.notifyItemRemoved(position);
+                }
+            } else if (position != -1) {
+                locationTaskList.set(position, locationTask);
+                locationTaskAdapter.notifyItemChanged(position);
+            } else {
+                // Newest location tasks are listed first
+                locationTaskList.add(0, locationTask);
+                locationTaskAdapter.notifyItemInserted(0);
+            }
+        }
+        // Distances of new or moved places, and their place in a nearest-first list
+        locationTaskAdapter.onLocationTasksChanged();
         updateUI();
     }
 
+    private int indexOfLocationTask(int locationTaskId) {
+        for (int i = 0; i < locationTaskList.size(); i++) {
+            if (locationTaskList.get(i).getId() == locationTaskId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CachedList<LocationTask> getCachedLocationTasks() {
+        return new ViewModelProvider(this).get(CachedList.class);
+    }
+
     private void loadLocationTasksFromDatabase() {
         // Ensure user is authenticated before loading data
         if (currentUserId == null) {
@@ -132,46 +223,16 @@ public class SavedPlacePage extends AppCompatActivity implements LocationTaskAda
             return;
         }
 
-        Cursor cursor = dbHelper.getAllLocationTasks(currentUserId);
-
-        if (cursor.moveToFirst()) {
-            do {
-                int colId = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_1);
-                int colTitle = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_2);
-                int colDescription = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_3);
-                int colLocationAddress = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_4);
-                int colLatitude = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_5);
-                int colLongitude = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_6);
-                int colNotificationRadius = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_7);
-                int colNotificationEnabled = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_8);
-                int colCreatedDate = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_9);
-
-                // Check if column indices are valid
-                if (colId == -1 || colTitle == -1 || colDescription == -1 ||
-                    colLocationAddress == -1 || colLatitude == -1 || colLongitude == -1 ||
-                    colNotificationRadius == -1 || colNotificationEnabled == -1 || colCreatedDate == -1) {
-                    Toast.makeText(this, "Error: Invalid column index in location tasks", Toast.LENGTH_SHORT).show();
-                    cursor.close();
-                    return;
-                }
-
-                int id = cursor.getInt(colId);
-                String title = cursor.getString(colTitle);
-                String description = cursor.getString(colDescription);
-                String locationAddress = cursor.getString(colLocationAddress);
-                double latitude = cursor.getDouble(colLatitude);
-                double longitude = cursor.getDouble(colLongitude);
-                int notificationRadius = cursor.getInt(colNotificationRadius);
-                boolean notificationEnabled = cursor.getInt(colNotificationEnabled) == 1;
-                long createdDate = cursor.getLong(colCreatedDate);
-
-                LocationTask locationTask = new LocationTask(id, title, description, locationAddress,
-                        latitude, longitude, notificationRadius, notificationEnabled, createdDate, currentUserId);
-                locationTaskList.add(locationTask);
-
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
+        repository.loadLocationTasks(currentUserId, locationTasks -> {
+            if (isDestroyed()) {
+                return;
+            }
+            locationTaskList.clear();
+            locationTaskList.addAll(locationTasks);
+            locationTaskAdapter.notifyDataSetChanged();
+            locationTaskAdapter.onLocationTasksChanged();
+            updateUI();
+        });
     }
 
     private void redirectToLogin() {
@@ -219,7 +280,7 @@ public class SavedPlacePage extends AppCompatActivity implements LocationTaskAda
 
     @Override
     public void onLocationChanged(Location location) {
-        // Update adapter with new location for distance calculations
+        // Distances are recalculated in the background, only rows whose label changed are rebound
         locationTaskAdapter.setCurrentUserLocation(location);
     }
 
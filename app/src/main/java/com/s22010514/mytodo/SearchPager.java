@@ -0,0 +1,55 @@
+package com.s22010514.mytodo;
+
+import android.database.Cursor;
+
+// Loads the hits of one search a page at a time using the last loaded hit as the keyset cursor,
+// so a deeper page seeks past the earlier hits instead of sorting and skipping them
+public class SearchPager {
+
+    private final DatabaseHelper dbHelper;
+    // DataChangeBus.TABLE_NOTES or DataChangeBus.TABLE_TASKS
+    private final String table;
+    private final String query;
+    private final String userId;
+    private final int pageSize;
+    // Rank and ID of the last loaded hit, title hits come before the others
+    private boolean lastTitleHit = true;
+    private long lastId = Long.MAX_VALUE;
+    // Read from the UI thread without the lock, which a load holds for the whole query
+    private volatile boolean hasMore = true;
+
+    public SearchPager(DatabaseHelper dbHelper, String table, String query, String userId, int pageSize) {
+        this.dbHelper = dbHelper;
+        this.table = table;
+        this.query = query;
+        this.userId = userId;
+        this.pageSize = pageSize;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    // Returns a cursor over the next page of hits, or null when there are none left
+    public synchronized Cursor loadNextPage() {
+        if (!hasMore) {
+            return null;
+        }
+        Cursor cursor = DataChangeBus.TABLE_NOTES.equals(table)
+                ? dbHelper.searchNotes(query, userId, lastTitleHit, lastId, pageSize)
+                : dbHelper.searchTasks(query, userId, lastTitleHit, lastId, pageSize);
+        if (cursor == null) {
+            // The query has no words
+            hasMore = false;
+            return null;
+        }
+
+        if (cursor.moveToLast()) {
+            lastTitleHit = cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.SEARCH_COL_TITLE_HIT)) == 1;
+            lastId = cursor.getLong(cursor.getColumnIndexOrThrow("ID"));
+        }
+        cursor.moveToPosition(-1);
+        hasMore = cursor.getCount() == pageSize;
+        return cursor;
+    }
+}
@@ -36,8 +36,8 @@ public class SimpleAddTaskPage extends AppCompatActivity {
 
     private int taskId = -1;
 
-    // Define DatabaseHelper instance
-    private DatabaseHelper dbHelper;
+    // Repository for database access off the main thread
+    private TodoRepository repository;
     private FirebaseAuth mAuth;
     private String currentUserId;
 
@@ -71,8 +71,8 @@ public class SimpleAddTaskPage extends AppCompatActivity {
         // Initialize UI elements
         initializeViews();
 
-        // Initialize DatabaseHelper
-        dbHelper = new DatabaseHelper(this);
+        // Initialize the repository
+        repository = new TodoRepository(this);
 
         // Set default priority selection (Medium)
         selectPriorityButton(mediumPriorityBtn, "Medium");
@@ -122,7 +122,7 @@ public class SimpleAddTaskPage extends AppCompatActivity {
             // Set the retrieved data to the UI elements
             if (taskTitle != null) taskTitleInput.setText(taskTitle);
             if (taskDescription != null) taskDescriptionInput.setText(taskDescription);
-            if (selectedDateInMillis != 0) selectedDateTextView.setText(formatDate(selectedDateInMillis));
+            if (selectedDateInMillis != 0) selectedDateTextView.setText(DateLabelFormatter.format(selectedDateInMillis));
 
             // Update button text for editing
             saveTaskButton.setText("Update Task");
@@ -151,25 +151,31 @@ public class SimpleAddTaskPage extends AppCompatActivity {
             return;
         }
 
-        boolean result;
+        // Prevent double saves while the write is running
+        saveTaskButton.setEnabled(false);
+
         if (taskId == -1) {
             // New task - include user ID for security
-            result = dbHelper.insertTask(taskTitle, taskDescription, selectedDateInMillis, currentUserId);
-            if (result) {
-                Toast.makeText(this, "✅ Task saved successfully", Toast.LENGTH_SHORT).show();
-                finish();
-            } else {
-                Toast.makeText(this, "❌ Failed to save task", Toast.LENGTH_SHORT).show();
-            }
+            repository.insertTask(taskTitle, taskDescription, selectedDateInMillis, currentUserId, result -> {
+                if (result) {
+                    Toast.makeText(this, "✅ Task saved successfully", Toast.LENGTH_SHORT).show();
+                    finish();
+                } else {
+                    saveTaskButton.setEnabled(true);
+                    Toast.makeText(this, "❌ Failed to save task", Toast.LENGTH_SHORT).show();
+                }
+            });
         } else {
             // Update existing task - include user ID for security
-            result = dbHelper.updateTaskById(taskId, taskTitle, taskDescription, selectedDateInMillis, currentUserId);
-            if (result) {
-                Toast.makeText(this, "✅ Task updated successfully", Toast.LENGTH_SHORT).show();
-                finish();
-            } else {
-                Toast.makeText(this, "❌ Failed to update task or unauthorized access", Toast.LENGTH_SHORT).show();
-            }
+            repository.updateTask(taskId, taskTitle, taskDescription, selectedDateInMillis, currentUserId, result -> {
+                if (result) {
+                    Toast.makeText(this, "✅ Task updated successfully", Toast.LENGTH_SHORT).show();
+                    finish();
+                } else {
+                    saveTaskButton.setEnabled(true);
+                    Toast.makeText(this, "❌ Failed to update task or unauthorized access", Toast.LENGTH_SHORT).show();
+                }
+            });
         }
     }
 
@@ -237,19 +243,9 @@ public class SimpleAddTaskPage extends AppCompatActivity {
             Calendar selectedDate = Calendar.getInstance();
             selectedDate.set(selectedYear, selectedMonth, selectedDay);
             selectedDateInMillis = selectedDate.getTimeInMillis();
-            selectedDateTextView.setText(formatDate(selectedDateInMillis));
+            selectedDateTextView.setText(DateLabelFormatter.format(selectedDateInMillis));
         }, year, month, day);
 
         datePickerDialog.show();
     }
-
-    // Method to format date from milliseconds to a readable format
-    private String formatDate(long dateInMillis) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(dateInMillis);
-        int year = calendar.get(Calendar.YEAR);
-        int month = calendar.get(Calendar.MONTH) + 1;
-        int day = calendar.get(Calendar.DAY_OF_MONTH);
-        return day + "/" + month + "/" + year;
-    }
 }
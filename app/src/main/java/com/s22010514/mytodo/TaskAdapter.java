@@ -1,6 +1,5 @@
 package com.s22010514.mytodo;
 
-import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.view.LayoutInflater;
@@ -10,31 +9,74 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.button.MaterialButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
-public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder> {
+public class TaskAdapter extends ListAdapter<Task, TaskAdapter.TaskViewHolder> {
 
-    private List<Task> taskList;
+    // Rows are matched by task ID and only rebound when a displayed field changed
+    private static final DiffUtil.ItemCallback<Task> DIFF_CALLBACK = new DiffUtil.ItemCallback<Task>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Task oldItem, @NonNull Task newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Task oldItem, @NonNull Task newItem) {
+            return Objects.equals(oldItem.getTitle(), newItem.getTitle()) &&
+                   Objects.equals(oldItem.getDescription(), newItem.getDescription()) &&
+                   oldItem.getDateInMillis() == newItem.getDateInMillis() &&
+                   oldItem.isCompleted() == newItem.isCompleted();
+        }
+    };
+
+    // Latest list handed to the differ; getCurrentList() lags behind until the diff has been applied
+    private List<Task> latestTasks = new ArrayList<>();
     private Context context;
-    private DatabaseHelper dbHelper;
+    private TodoRepository repository;
     private OnTaskDeletedListener onTaskDeletedListener;
+    private TaskPager taskPager;
+    // Where the undo message is shown
+    private RecyclerView recyclerView;
+    private OnSelectionChangedListener onSelectionChangedListener;
     private FirebaseAuth mAuth;
+    // IDs of the tasks picked with a long press for a bulk action
+    private final Set<Integer> selectedTaskIds = new LinkedHashSet<>();
+
+    private static final int SELECTED_CARD_COLOR = 0xFFE0E7FF;
+    private static final int CARD_COLOR = 0xFFFFFFFF;
+    // Rebinds only the selected state of a row
+    private static final Object PAYLOAD_SELECTION = new Object();
 
     public interface OnTaskDeletedListener {
         void onTaskDeleted();
+
+        // A deleted task was brought back with undo
+        void onTaskRestored();
     }
 
-    public TaskAdapter(List<Task> taskList, Context context) {
-        this.taskList = taskList;
+    public interface OnSelectionChangedListener {
+        void onSelectionChanged(int selectedCount);
+    }
+
+    public TaskAdapter(Context context) {
+        super(DIFF_CALLBACK);
+        setHasStableIds(true);
         this.context = context;
-        this.dbHelper = new DatabaseHelper(context);
+        this.repository = new TodoRepository(context);
         this.mAuth = FirebaseAuth.getInstance();
     }
 
@@ -42,6 +84,68 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
         this.onTaskDeletedListener = listener;
     }
 
+    public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        this.onSelectionChangedListener = listener;
+    }
+
+    // SELECTION - a long press starts selecting, then taps add or remove rows
+    public boolean isSelecting() {
+        return !selectedTaskIds.isEmpty();
+    }
+
+    public List<Integer> getSelectedTaskIds() {
+        return new ArrayList<>(selectedTaskIds);
+    }
+
+    public void selectAll() {
+        for (Task task : latestTasks) {
+            selectedTaskIds.add(task.getId());
+        }
+        notifySelectionChanged(RecyclerView.NO_POSITION);
+    }
+
+    public void clearSelection() {
+        if (selectedTaskIds.isEmpty()) {
+            return;
+        }
+        selectedTaskIds.clear();
+        notifySelectionChanged(RecyclerView.NO_POSITION);
+    }
+
+    private void toggleSelection(Task task, int position) {
+        boolean wasSelecting = isSelecting();
+        if (!selectedTaskIds.remove(task.getId())) {
+            selectedTaskIds.add(task.getId());
+        }
+        // Entering or leaving selection mode changes what a tap does on every row
+        notifySelectionChanged(wasSelecting == isSelecting() ? position : RecyclerView.NO_POSITION);
+    }
+
+    // Selection isn't part of the diffed contents, so rows are rebound directly: only the toggled one,
+    // or all of them when position is NO_POSITION
+    private void notifySelectionChanged(int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
+        } else {
+            notifyItemChanged(position, PAYLOAD_SELECTION);
+        }
+        if (onSelectionChangedListener != null) {
+            onSelectionChangedListener.onSelectionChanged(selectedTaskIds.size());
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        this.recyclerView = null;
+    }
+
     @NonNull
     @Override
     public TaskViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -51,17 +155,94 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
 
     @Override
     public void onBindViewHolder(@NonNull TaskViewHolder holder, int position) {
-        Task task = taskList.get(position);
-        holder.bind(task, position);
+        holder.bind(getItem(position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TaskViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && isSelectionOnly(payloads)) {
+            holder.bindSelection(getItem(position));
+        } else {
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+
+    private static boolean isSelectionOnly(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_SELECTION) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
-    public int getItemCount() {
-        return taskList.size();
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
-    // Delete a task from the database with user authentication check
-    private void deleteTask(Task task, int position) {
+    // Diffs the new list against the current one in the background and rebinds only changed rows
+    public void submitTasks(List<Task> tasks) {
+        latestTasks = tasks;
+        submitList(tasks);
+    }
+
+    public List<Task> getLatestTasks() {
+        return latestTasks;
+    }
+
+    // Set while the list holds the pager's sorted window, null while it holds ranked search hits
+    public void setTaskPager(TaskPager taskPager) {
+        this.taskPager = taskPager;
+    }
+
+    // Completion is the first sort key, so a toggled task moves to its place in the other group.
+    // Leaving it where it was would let a later page return it a second time
+    private void moveTask(Task updatedTask) {
+        if (taskPager == null) {
+            // Search hits are ranked by relevance, not by the list order
+            replaceTask(updatedTask);
+            return;
+        }
+        List<Task> updated = new ArrayList<>(latestTasks);
+        for (int i = 0; i < updated.size(); i++) {
+            if (updated.get(i).getId() == updatedTask.getId()) {
+                updated.remove(i);
+                break;
+            }
+        }
+        int position = TaskPager.insertionIndex(updated, updatedTask, taskPager.hasMore());
+        if (position != -1) {
+            updated.add(position, updatedTask);
+        }
+        submitTasks(updated);
+    }
+
+    private void replaceTask(Task updatedTask) {
+        List<Task> updated = new ArrayList<>(latestTasks);
+        for (int i = 0; i < updated.size(); i++) {
+            if (updated.get(i).getId() == updatedTask.getId()) {
+                updated.set(i, updatedTask);
+                submitTasks(updated);
+                return;
+            }
+        }
+    }
+
+    private void removeTask(Task task) {
+        List<Task> updated = new ArrayList<>(latestTasks);
+        for (int i = 0; i < updated.size(); i++) {
+            if (updated.get(i).getId() == task.getId()) {
+                updated.remove(i);
+                submitTasks(updated);
+                return;
+            }
+        }
+    }
+
+    // Delete a task from the database with user authentication check.
+    // Deleted tasks stay as tombstones for a while, so there's no confirmation, just an undo
+    private void deleteTask(Task task) {
         // Check user authentication
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser == null) {
@@ -71,34 +252,28 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
 
         String currentUserId = currentUser.getUid();
 
-        // Show modern confirmation dialog
-        new AlertDialog.Builder(context, android.R.style.Theme_Material_Dialog_Alert)
-                .setTitle("🗑️ Delete Task")
-                .setMessage("Are you sure you want to delete this task?\n\n\"" + task.getTitle() + "\"\n\nThis action cannot be undone.")
-                .setPositiveButton("DELETE", (dialog, which) -> {
-                    // Use secure delete method with user ID verification
-                    boolean isDeleted = dbHelper.deleteTaskById(task.getId(), currentUserId);
-                    if (isDeleted) {
-                        // Remove the task from the list and notify the adapter
-                        taskList.remove(position);
-                        notifyItemRemoved(position);
-                        notifyItemRangeChanged(position, taskList.size());
-
-                        // Notify the activity about the deletion
-                        if (onTaskDeletedListener != null) {
-                            onTaskDeletedListener.onTaskDeleted();
-                        }
-
-                        // Show a modern success message
-                        Toast.makeText(context, "✅ Task deleted successfully", Toast.LENGTH_SHORT).show();
-                    } else {
-                        // Show a modern error message
-                        Toast.makeText(context, "❌ Failed to delete task or unauthorized access", Toast.LENGTH_SHORT).show();
-                    }
-                })
-                .setNegativeButton("CANCEL", null)
-                .setIcon(android.R.drawable.ic_dialog_alert)
-                .show();
+        // Use secure delete method with user ID verification
+        repository.deleteTask(task.getId(), currentUserId, isDeleted -> {
+            if (isDeleted) {
+                // Remove the task from the list, the differ animates just that row
+                removeTask(task);
+
+                // Notify the activity about the deletion
+                if (onTaskDeletedListener != null) {
+                    onTaskDeletedListener.onTaskDeleted();
+                }
+
+                UndoSnackbar.show(recyclerView, "🗑️ Task deleted", () ->
+                        repository.restoreTasks(Collections.singletonList(task.getId()), currentUserId, restored -> {
+                            if (restored > 0 && onTaskDeletedListener != null) {
+                                onTaskDeletedListener.onTaskRestored();
+                            }
+                        }));
+            } else {
+                // Show a modern error message
+                Toast.makeText(context, "❌ Failed to delete task or unauthorized access", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     // Starts the AddTaskPage activity to update the task
@@ -137,38 +312,54 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
             completionStatusIcon = itemView.findViewById(R.id.completionStatusIcon);
         }
 
-        public void bind(Task task, int position) {
+        public void bind(Task task) {
+            bindSelection(task);
+
             // Set task title with completion styling
             taskTitle.setText(task.getTitle());
-            taskDate.setText(formatDate(task.getDateInMillis()));
+            taskDate.setText(DateLabelFormatter.formatRelative(task.getDateInMillis()));
 
             // Update completion status display
             updateCompletionStatus(task);
 
             // Handle description visibility
             String description = task.getDescription();
-            if (description != null && !description.trim().isEmpty()) {
+            boolean hasDescription = description != null && !description.trim().isEmpty();
+            if (hasDescription) {
                 taskDescription.setText(description);
                 taskDescription.setVisibility(View.VISIBLE);
                 taskDescriptionExpanded.setText(description);
-
-                // Set up click listener for expanding/collapsing description
-                itemView.setOnClickListener(v -> toggleDescription());
             } else {
                 taskDescription.setVisibility(View.GONE);
                 taskDescriptionExpanded.setVisibility(View.GONE);
-                // Remove click listener if no description
-                itemView.setOnClickListener(null);
             }
 
+            // While selecting, taps pick rows; otherwise they expand or collapse the description
+            itemView.setOnClickListener(v -> {
+                if (isSelecting()) {
+                    toggleSelection(task, getBindingAdapterPosition());
+                } else if (hasDescription) {
+                    toggleDescription();
+                }
+            });
+            itemView.setOnLongClickListener(v -> {
+                toggleSelection(task, getBindingAdapterPosition());
+                return true;
+            });
+
             // Reset expanded state when recycling views
             isExpanded = false;
             taskDescriptionExpanded.setVisibility(View.GONE);
 
             // Set up click listeners for action buttons
             editTaskBtn.setOnClickListener(v -> editTask(task));
-            deleteTaskBtn.setOnClickListener(v -> deleteTask(task, position));
-            completeTaskBtn.setOnClickListener(v -> toggleTaskCompletion(task, position));
+            deleteTaskBtn.setOnClickListener(v -> deleteTask(task));
+            completeTaskBtn.setOnClickListener(v -> toggleTaskCompletion(task));
+        }
+
+        void bindSelection(Task task) {
+            boolean selected = selectedTaskIds.contains(task.getId());
+            ((CardView) itemView).setCardBackgroundColor(selected ? SELECTED_CARD_COLOR : CARD_COLOR);
         }
 
         private void updateCompletionStatus(Task task) {
@@ -191,7 +382,7 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
             }
         }
 
-        private void toggleTaskCompletion(Task task, int position) {
+        private void toggleTaskCompletion(Task task) {
             // Check user authentication
             FirebaseUser currentUser = mAuth.getCurrentUser();
             if (currentUser == null) {
@@ -203,24 +394,19 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
             boolean newCompletionStatus = !task.isCompleted();
 
             // Update in database with user ID verification
-            boolean success = dbHelper.updateTaskCompletionStatus(task.getId(), newCompletionStatus, currentUserId);
-
-            if (success) {
-                // Update task object
-                task.setCompleted(newCompletionStatus);
-
-                // Update UI
-                updateCompletionStatus(task);
-
-                // Show feedback
-                String message = newCompletionStatus ? "✅ Task completed!" : "📝 Task marked as incomplete";
-                Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
-
-                // Notify adapter to refresh the list (for proper ordering)
-                notifyDataSetChanged();
-            } else {
-                Toast.makeText(context, "❌ Failed to update task status or unauthorized access", Toast.LENGTH_SHORT).show();
-            }
+            repository.updateTaskCompletion(task.getId(), newCompletionStatus, currentUserId, success -> {
+                if (success) {
+                    // Submit a copy with the new status, moved to where the new status sorts
+                    moveTask(new Task(task.getId(), task.getTitle(), task.getDescription(),
+                            task.getDateInMillis(), newCompletionStatus));
+
+                    // Show feedback
+                    String message = newCompletionStatus ? "✅ Task completed!" : "📝 Task marked as incomplete";
+                    Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(context, "❌ Failed to update task status or unauthorized access", Toast.LENGTH_SHORT).show();
+                }
+            });
         }
 
         private void toggleDescription() {
@@ -236,36 +422,5 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
                 isExpanded = true;
             }
         }
-
-        private String formatDate(long dateInMillis) {
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTimeInMillis(dateInMillis);
-
-            Calendar today = Calendar.getInstance();
-            Calendar tomorrow = Calendar.getInstance();
-            tomorrow.add(Calendar.DAY_OF_YEAR, 1);
-            Calendar yesterday = Calendar.getInstance();
-            yesterday.add(Calendar.DAY_OF_YEAR, -1);
-
-            // Check for today, tomorrow, yesterday
-            if (isSameDay(calendar, today)) {
-                return "Today";
-            } else if (isSameDay(calendar, tomorrow)) {
-                return "Tomorrow";
-            } else if (isSameDay(calendar, yesterday)) {
-                return "Yesterday";
-            } else {
-                // Format as regular date
-                int year = calendar.get(Calendar.YEAR);
-                int month = calendar.get(Calendar.MONTH) + 1;
-                int day = calendar.get(Calendar.DAY_OF_MONTH);
-                return day + "/" + month + "/" + year;
-            }
-        }
-
-        private boolean isSameDay(Calendar cal1, Calendar cal2) {
-            return cal1.get(Calendar.YEAR) == cal2.get(Calendar.YEAR) &&
-                   cal1.get(Calendar.DAY_OF_YEAR) == cal2.get(Calendar.DAY_OF_YEAR);
-        }
     }
 }
@@ -1,14 +1,22 @@
 package com.s22010514.mytodo;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -17,19 +25,47 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public class TaskListPage extends AppCompatActivity implements TaskAdapter.OnTaskDeletedListener {
+public class TaskListPage extends AppCompatActivity implements TaskAdapter.OnTaskDeletedListener,
+        TaskAdapter.OnSelectionChangedListener {
 
     private RecyclerView taskRecyclerView;
     private TaskAdapter taskAdapter;
-    private List<Task> taskList;
-    private DatabaseHelper dbHelper;
+    private TodoRepository repository;
     private TextView taskCountTxt;
     private LinearLayout emptyStateLayout;
     private MaterialButton addTaskBtn;
+    private MaterialButton completeAllBtn;
+    private ActionMode selectionMode;
     private FirebaseAuth mAuth;
     private String currentUserId;
+    private TaskPager taskPager;
+    private int totalTaskCount;
+    private boolean isLoadingPage = false;
+    // A refresh asked for while a page was loading, run once that load is done
+    private boolean refreshPending = false;
+    private CachedTaskList cachedTasks;
+    private EditText taskSearchInput;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::runSearch;
+    // Bumped whenever the list switches between all tasks and search hits, so late results are dropped
+    private int listGeneration = 0;
+
+    // Start loading the next page when this many rows are left below the last visible one
+    private static final int PREFETCH_DISTANCE = 10;
+
+    // Wait for typing to pause this long before searching
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+
+    // Keeps the loaded tasks, their pager and the total count across configuration changes
+    public static class CachedTaskList extends CachedList<Task> {
+        TaskPager taskPager;
+        int totalTaskCount;
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -57,29 +93,81 @@ public class TaskListPage extends AppCompatActivity implements TaskAdapter.OnTas
         taskCountTxt = findViewById(R.id.taskCountTxt);
         emptyStateLayout = findViewById(R.id.emptyStateLayout);
         addTaskBtn = findViewById(R.id.addTaskBtn);
+        completeAllBtn = findViewById(R.id.completeAllBtn);
+        taskSearchInput = findViewById(R.id.taskSearchInput);
 
         // Set up RecyclerView
-        taskRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        taskRecyclerView.setLayoutManager(layoutManager);
 
-        // Initialize DatabaseHelper
-        dbHelper = new DatabaseHelper(this);
-
-        // Initialize the list to hold Tasks
-        taskList = new ArrayList<>();
+        // Initialize the repository (database work runs off the main thread)
+        repository = new TodoRepository(this);
 
         // Set up the RecyclerView and adapter
-        taskAdapter = new TaskAdapter(taskList, this);
+        taskAdapter = new TaskAdapter(this);
         taskAdapter.setOnTaskDeletedListener(this);
+        taskAdapter.setOnSelectionChangedListener(this);
         taskRecyclerView.setAdapter(taskAdapter);
 
+        // Restore the tasks loaded before a rotation
+        cachedTasks = new ViewModelProvider(this).get(CachedTaskList.class);
+        if (cachedTasks.taskPager == null) {
+            cachedTasks.taskPager = repository.createTaskPager(currentUserId);
+        }
+        taskPager = cachedTasks.taskPager;
+        totalTaskCount = cachedTasks.totalTaskCount;
+        taskAdapter.submitTasks(new ArrayList<>(cachedTasks.items));
+        taskAdapter.setTaskPager(cachedTasks.searchQuery.isEmpty() ? taskPager : null);
+
+        // Fetch the next page as the user scrolls towards the end of the loaded tasks
+        taskRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0 || isLoadingPage) {
+                    return;
+                }
+                boolean searching = !cachedTasks.searchQuery.isEmpty();
+                boolean hasMore = searching ? cachedTasks.hasMoreSearchHits : taskPager.hasMore();
+                if (!hasMore) {
+                    return;
+                }
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                int loadedCount = taskAdapter.getLatestTasks().size();
+                if (lastVisible >= loadedCount - PREFETCH_DISTANCE) {
+                    if (searching) {
+                        loadSearchHits(false);
+                    } else {
+                        loadNextPage();
+                    }
+                }
+            }
+        });
+
+        // Search as the user types, once they pause
+        taskSearchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchHandler.removeCallbacks(searchRunnable);
+                searchHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
+        });
+
         // Set up the add task button
         addTaskBtn.setOnClickListener(v -> {
             Intent intent = new Intent(TaskListPage.this, AddTaskPage.class);
             startActivity(intent);
         });
 
-        // Load tasks from database
-        loadTasksFromDatabase();
+        // Complete every open task with a single update
+        completeAllBtn.setOnClickListener(v -> markAllTasksCompleted());
+
+        // Tasks are loaded in onResume
         updateUI();
     }
 
@@ -90,21 +178,312 @@ public class TaskListPage extends AppCompatActivity implements TaskAdapter.OnTas
         refreshTaskList();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchHandler.removeCallbacks(searchRunnable);
+        if (cachedTasks != null) {
+            cachedTasks.items.clear();
+            cachedTasks.items.addAll(taskAdapter.getLatestTasks());
+            cachedTasks.totalTaskCount = totalTaskCount;
+        }
+    }
+
     @Override
     public void onTaskDeleted() {
         // This method is called when a task is deleted from the adapter
+        totalTaskCount = Math.max(0, totalTaskCount - 1);
         updateUI();
     }
 
+    @Override
+    public void onTaskRestored() {
+        refreshTaskList();
+    }
+
+    @Override
+    public void onSelectionChanged(int selectedCount) {
+        if (selectedCount == 0) {
+            if (selectionMode != null) {
+                selectionMode.finish();
+            }
+            return;
+        }
+        if (selectionMode == null) {
+            selectionMode = startSupportActionMode(selectionCallback);
+        }
+        if (selectionMode != null) {
+            selectionMode.setTitle(selectedCount + " selected");
+        }
+    }
+
+    // Contextual bar shown while tasks are selected
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.task_selection_menu, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            int itemId = item.getItemId();
+            if (itemId == R.id.complete_selected) {
+                completeSelectedTasks();
+                return true;
+            } else if (itemId == R.id.delete_selected) {
+                deleteSelectedTasks();
+                return true;
+            } else if (itemId == R.id.select_all) {
+                taskAdapter.selectAll();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            taskAdapter.clearSelection();
+        }
+    };
+
+    // Deletes all selected tasks in one transaction, they can be brought back from the undo message
+    private void deleteSelectedTasks() {
+        List<Integer> ids = taskAdapter.getSelectedTaskIds();
+        repository.deleteTasks(ids, currentUserId, deletedCount -> {
+            if (isDestroyed()) {
+                return;
+            }
+            // Drop the deleted rows locally, the differ animates just those
+            Set<Integer> deletedIds = new HashSet<>(ids);
+            List<Task> remaining = new ArrayList<>();
+            for (Task task : taskAdapter.getLatestTasks()) {
+                if (!deletedIds.contains(task.getId())) {
+                    remaining.add(task);
+                }
+            }
+            taskAdapter.submitTasks(remaining);
+            totalTaskCount = Math.max(0, totalTaskCount - deletedCount);
+            finishSelection();
+            updateUI();
+            UndoSnackbar.show(taskRecyclerView, "🗑️ Deleted " + deletedCount +
+                    (deletedCount == 1 ? " task" : " tasks"), () ->
+                    repository.restoreTasks(ids, currentUserId, restoredCount -> {
+                        if (!isDestroyed()) {
+                            refreshTaskList();
+                        }
+                    }));
+        });
+    }
+
+    // Marks the selected tasks complete in one transaction
+    private void completeSelectedTasks() {
+        repository.updateTasksCompletion(taskAdapter.getSelectedTaskIds(), true, currentUserId, updatedCount -> {
+            if (isDestroyed()) {
+                return;
+            }
+            finishSelection();
+            Toast.makeText(this, "✅ Completed " + updatedCount +
+                    (updatedCount == 1 ? " task" : " tasks"), Toast.LENGTH_SHORT).show();
+            reloadAfterBulkUpdate();
+        });
+    }
+
+    private void markAllTasksCompleted() {
+        repository.markAllTasksCompleted(currentUserId, updatedCount -> {
+            if (isDestroyed()) {
+                return;
+            }
+            Toast.makeText(this, updatedCount == 0 ? "All tasks are already complete" :
+                    "✅ Completed " + updatedCount + (updatedCount == 1 ? " task" : " tasks"),
+                    Toast.LENGTH_SHORT).show();
+            if (updatedCount > 0) {
+                reloadAfterBulkUpdate();
+            }
+        });
+    }
+
+    // Completed tasks move down the list, so reload rather than patch rows
+    private void reloadAfterBulkUpdate() {
+        // Whatever was loading read the old rows and will be dropped
+        listGeneration++;
+        isLoadingPage = false;
+        if (cachedTasks.searchQuery.isEmpty()) {
+            loadTasksFromDatabase();
+        } else {
+            loadSearchHits(true);
+        }
+    }
+
+    private void finishSelection() {
+        if (selectionMode != null) {
+            selectionMode.finish();
+        } else {
+            taskAdapter.clearSelection();
+        }
+    }
+
+    // Switches the list between search hits and all tasks when the search text has changed
+    private void runSearch() {
+        String query = taskSearchInput.getText().toString().trim();
+        if (query.equals(cachedTasks.searchQuery)) {
+            return;
+        }
+        cachedTasks.searchQuery = query;
+        // Whatever was loading belongs to the old list and will be dropped
+        listGeneration++;
+        isLoadingPage = false;
+
+        if (query.isEmpty()) {
+            // Back to all tasks, the list has to be reloaded in full
+            cachedTasks.version = -1;
+            cachedTasks.searchPager = null;
+            refreshTaskList();
+        } else {
+            loadSearchHits(true);
+        }
+    }
+
+    // Loads a page of search hits, replacing the list for the first page and appending after that
+    private void loadSearchHits(boolean firstPage) {
+        int generation = listGeneration;
+        isLoadingPage = true;
+        if (firstPage) {
+            // Later pages must not mark changes made since the first one as seen
+            cachedTasks.version = DataChangeBus.getInstance().getVersion(DataChangeBus.TABLE_TASKS);
+            cachedTasks.searchPager = repository.createTaskSearchPager(cachedTasks.searchQuery, currentUserId);
+        }
+        repository.loadTaskSearchHits(cachedTasks.searchPager, hits -> {
+            if (isDestroyed() || generation != listGeneration) {
+                return;
+            }
+            isLoadingPage = false;
+            cachedTasks.hasMoreSearchHits = hits.size() == DatabaseHelper.SEARCH_PAGE_SIZE;
+            List<Task> tasks = new ArrayList<>();
+            if (!firstPage) {
+                tasks.addAll(taskAdapter.getLatestTasks());
+            }
+            tasks.addAll(hits);
+            taskAdapter.setTaskPager(null);
+            taskAdapter.submitTasks(tasks);
+            updateUI();
+            runPendingRefresh();
+        });
+    }
+
     // Method to refresh the task list
     private void refreshTaskList() {
-        taskList.clear();
-        loadTasksFromDatabase();
-        taskAdapter.notifyDataSetChanged();
-        updateUI();
+        DataChangeBus changeBus = DataChangeBus.getInstance();
+        long currentVersion = changeBus.getVersion(DataChangeBus.TABLE_TASKS);
+        if (cachedTasks.version == currentVersion) {
+            updateUI();
+            return;
+        }
+        if (isLoadingPage) {
+            refreshPending = true;
+            return;
+        }
+        if (!cachedTasks.searchQuery.isEmpty()) {
+            // Edits can change which tasks match, so run the search again
+            loadSearchHits(true);
+            return;
+        }
+
+        List<DataChangeBus.Change> changes = cachedTasks.version < 0 ? null
+                : changeBus.getChangesSince(DataChangeBus.TABLE_TASKS, cachedTasks.version);
+        // New tasks can land anywhere in the sorted window, so inserts need the keyset reload
+        if (changes == null || DataChangeBus.containsInsert(changes)) {
+            loadTasksFromDatabase();
+            return;
+        }
+
+        cachedTasks.version = currentVersion;
+        isLoadingPage = true;
+        int generation = listGeneration;
+        repository.loadChangedTasks(currentUserId, DataChangeBus.changedRowIds(changes), changedTasks -> {
+            if (generation == listGeneration) {
+                applyTaskChanges(changedTasks);
+            }
+        });
+    }
+
+    // Applies row-level changes to the loaded tasks, moving a task whose sort key changed to its new place
+    private void applyTaskChanges(Map<Integer, Task> changedTasks) {
+        if (isDestroyed()) {
+            return;
+        }
+        isLoadingPage = false;
+        if (changedTasks == null) {
+            loadTasksFromDatabase();
+            return;
+        }
+
+        List<Task> tasks = new ArrayList<>(taskAdapter.getLatestTasks());
+        boolean removedAny = false;
+        for (Map.Entry<Integer, Task> entry : changedTasks.entrySet()) {
+            int position = indexOfTask(tasks, entry.getKey());
+            Task task = entry.getValue();
+            if (task == null) {
+                if (position != -1) {
+                    tasks.remove(position);
+                    removedAny = true;
+                }
+                continue;
+            }
+            Task loaded = position != -1 ? tasks.get(position) : null;
+            if (loaded != null && task.isCompleted() == loaded.isCompleted()
+                    && task.getDateInMillis() == loaded.getDateInMillis()) {
+                tasks.set(position, task);
+                continue;
+            }
+            // The sort key changed, or the task wasn't loaded. If it now sorts before the last loaded
+            // task the pager has already passed it, so it has to go into the window here
+            if (position != -1) {
+                tasks.remove(position);
+            }
+            int insertAt = TaskPager.insertionIndex(tasks, task, taskPager.hasMore());
+            if (insertAt != -1) {
+                tasks.add(insertAt, task);
+            }
+        }
+        taskAdapter.submitTasks(tasks);
+
+        if (removedAny) {
+            repository.getTaskCount(currentUserId, count -> {
+                if (isDestroyed()) {
+                    return;
+                }
+                totalTaskCount = count;
+                updateUI();
+            });
+        }
+        runPendingRefresh();
+    }
+
+    // Catches up with writes that came in while a page was loading
+    private void runPendingRefresh() {
+        if (refreshPending) {
+            refreshPending = false;
+            refreshTaskList();
+        }
+    }
+
+    private static int indexOfTask(List<Task> tasks, int taskId) {
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i).getId() == taskId) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    // Method to load tasks from the database with user filtering
+    // Method to load the first page of tasks from the database with user filtering
     private void loadTasksFromDatabase() {
         // Ensure user is authenticated before loading data
         if (currentUserId == null) {
@@ -113,36 +492,45 @@ public class TaskListPage extends AppCompatActivity implements TaskAdapter.OnTas
             return;
         }
 
-        // Get a cursor to tasks for the current user only
-        Cursor cursor = dbHelper.getAllTasks(currentUserId);
-
-        // Check if the cursor has data
-        if (cursor.moveToFirst()) {
-            // Iterate through the cursor and populate the task list
-            do {
-                int colTaskId = cursor.getColumnIndex(DatabaseHelper.TASK_COL_1);
-                int colTaskTitle = cursor.getColumnIndex(DatabaseHelper.TASK_COL_2);
-                int colTaskDescription = cursor.getColumnIndex(DatabaseHelper.TASK_COL_3);
-                int colTaskDate = cursor.getColumnIndex(DatabaseHelper.TASK_COL_4);
-                int colTaskCompleted = cursor.getColumnIndex(DatabaseHelper.TASK_COL_5);
-
-                // Check if column indices are valid
-                if (colTaskId != -1 && colTaskTitle != -1 && colTaskDescription != -1 && colTaskDate != -1) {
-                    int taskId = cursor.getInt(colTaskId);
-                    String taskTitle = cursor.getString(colTaskTitle);
-                    String taskDescription = cursor.getString(colTaskDescription);
-                    long taskDate = cursor.getLong(colTaskDate);
-                    boolean isCompleted = colTaskCompleted != -1 && cursor.getInt(colTaskCompleted) == 1;
-
-                    // Create a Task object and add it to the list
-                    Task task = new Task(taskId, taskTitle, taskDescription, taskDate, isCompleted);
-                    taskList.add(task);
-                }
-            } while (cursor.moveToNext());
+        // Only the first page is loaded up front, the rest is fetched while scrolling
+        if (isLoadingPage) {
+            refreshPending = true;
+            return;
         }
+        // Reload at least as many rows as are already shown so the diff keeps the scroll position
+        isLoadingPage = true;
+        cachedTasks.version = DataChangeBus.getInstance().getVersion(DataChangeBus.TABLE_TASKS);
+        int loadedCount = taskAdapter.getLatestTasks().size();
+        int generation = listGeneration;
+        repository.getTaskCount(currentUserId, count -> repository.reloadTasks(taskPager, loadedCount, tasks -> {
+            if (isDestroyed() || generation != listGeneration) {
+                return;
+            }
+            isLoadingPage = false;
+            totalTaskCount = count;
+            updateUI();
+            taskAdapter.setTaskPager(taskPager);
+            taskAdapter.submitTasks(tasks);
+            runPendingRefresh();
+        }));
+    }
 
-        // Close the cursor to free resources
-        cursor.close();
+    // Method to append the next page of tasks to the list
+    private void loadNextPage() {
+        isLoadingPage = true;
+        int generation = listGeneration;
+        repository.loadNextTaskPage(taskPager, page -> {
+            if (isDestroyed() || generation != listGeneration) {
+                return;
+            }
+            isLoadingPage = false;
+            if (!page.isEmpty()) {
+                List<Task> tasks = new ArrayList<>(taskAdapter.getLatestTasks());
+                tasks.addAll(page);
+                taskAdapter.submitTasks(tasks);
+            }
+            runPendingRefresh();
+        });
     }
 
     private void redirectToLogin() {
@@ -153,10 +541,17 @@ public class TaskListPage extends AppCompatActivity implements TaskAdapter.OnTas
 
     // Method to update UI based on task list state
     private void updateUI() {
-        int taskCount = taskList.size();
+        int taskCount = totalTaskCount;
 
         // Update task count text
-        if (taskCount == 0) {
+        if (!cachedTasks.searchQuery.isEmpty()) {
+            // Keep the list visible while searching so an empty result doesn't look like no tasks at all
+            int hitCount = taskAdapter.getLatestTasks().size();
+            String more = cachedTasks.hasMoreSearchHits ? "+" : "";
+            taskCountTxt.setText(hitCount + more + (hitCount == 1 ? " result" : " results"));
+            emptyStateLayout.setVisibility(View.GONE);
+            taskRecyclerView.setVisibility(View.VISIBLE);
+        } else if (taskCount == 0) {
             taskCountTxt.setText("No tasks");
             emptyStateLayout.setVisibility(View.VISIBLE);
             taskRecyclerView.setVisibility(View.GONE);
@@ -0,0 +1,107 @@
+package com.s22010514.mytodo;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Loads a user's tasks one page at a time using the last loaded task as the keyset cursor
+public class TaskPager {
+
+    // The order getTasksPage returns tasks in: open first, then newest date, then newest ID
+    public static final Comparator<Task> LIST_ORDER = (a, b) -> {
+        if (a.isCompleted() != b.isCompleted()) {
+            return a.isCompleted() ? 1 : -1;
+        }
+        if (a.getDateInMillis() != b.getDateInMillis()) {
+            return Long.compare(b.getDateInMillis(), a.getDateInMillis());
+        }
+        return Integer.compare(b.getId(), a.getId());
+    };
+
+    private final DatabaseHelper dbHelper;
+    private final String userId;
+    private final int pageSize;
+    private Task lastLoadedTask;
+    // Read from the UI thread without the lock, which a load holds for the whole query
+    private volatile boolean hasMore = true;
+
+    public TaskPager(DatabaseHelper dbHelper, String userId, int pageSize) {
+        this.dbHelper = dbHelper;
+        this.userId = userId;
+        this.pageSize = pageSize;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    // Start again from the first page
+    public synchronized void reset() {
+        lastLoadedTask = null;
+        hasMore = true;
+    }
+
+    // Starts again from the top and loads at least minimumCount tasks (rounded up to whole pages)
+    public synchronized List<Task> reload(int minimumCount) {
+        reset();
+        int pages = Math.max(1, (minimumCount + pageSize - 1) / pageSize);
+        return loadWindow(pages * pageSize);
+    }
+
+    // Returns the next page of tasks, or an empty list when everything has been loaded
+    public synchronized List<Task> loadNextPage() {
+        if (!hasMore) {
+            return new ArrayList<>();
+        }
+        return loadWindow(pageSize);
+    }
+
+    private List<Task> loadWindow(int limit) {
+        List<Task> page = readTasks(dbHelper.getTasksPage(userId, lastLoadedTask, limit));
+
+        if (!page.isEmpty()) {
+            // Keep a copy of the sort key so later edits to the loaded task don't move the cursor
+            Task last = page.get(page.size() - 1);
+            lastLoadedTask = new Task(last.getId(), null, null, last.getDateInMillis(), last.isCompleted());
+        }
+        hasMore = page.size() == limit;
+        return page;
+    }
+
+    // Where task belongs in a sorted window of loaded tasks that doesn't contain it, or -1 when it sorts
+    // after the last loaded task while more pages remain, since the pager will bring it back in order
+    public static int insertionIndex(List<Task> window, Task task, boolean hasMore) {
+        int position = -Collections.binarySearch(window, task, LIST_ORDER) - 1;
+        if (position == window.size() && hasMore) {
+            return -1;
+        }
+        return position;
+    }
+
+    // Reads and closes a tasks cursor
+    static List<Task> readTasks(Cursor cursor) {
+        List<Task> tasks = new ArrayList<>();
+        try {
+            int colTaskId = cursor.getColumnIndex(DatabaseHelper.TASK_COL_1);
+            int colTaskTitle = cursor.getColumnIndex(DatabaseHelper.TASK_COL_2);
+            int colTaskDescription = cursor.getColumnIndex(DatabaseHelper.TASK_COL_3);
+            int colTaskDate = cursor.getColumnIndex(DatabaseHelper.TASK_COL_4);
+            int colTaskCompleted = cursor.getColumnIndex(DatabaseHelper.TASK_COL_5);
+
+            while (cursor.moveToNext()) {
+                int taskId = cursor.getInt(colTaskId);
+                String taskTitle = cursor.getString(colTaskTitle);
+                String taskDescription = cursor.getString(colTaskDescription);
+                long taskDate = cursor.getLong(colTaskDate);
+                boolean isCompleted = cursor.getInt(colTaskCompleted) == 1;
+                tasks.add(new Task(taskId, taskTitle, taskDescription, taskDate, isCompleted));
+            }
+        } finally {
+            cursor.close();
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,19 @@
+package com.s22010514.mytodo;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Receives the due date alarm armed by ReminderScheduler, and re-arms it after a reboot or an
+ * app update, both of which clear pending alarms.
+ */
+public class TaskReminderReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        // After a reboot this also shows the reminders that fell due while the phone was off.
+        // The database work runs off the main thread, the broadcast stays alive until it finishes
+        ReminderScheduler.onAlarm(context, goAsync());
+    }
+}
@@ -6,14 +6,33 @@ import android.util.Log;
 import androidx.appcompat.app.AppCompatDelegate;
 
 public class ThemeManager {
+    // Theme currently forced by the light sensor: true for dark, false for light, null while it follows the system
+    public static Boolean getAppliedDarkTheme() {
+        int mode = AppCompatDelegate.getDefaultNightMode();
+        if (mode == AppCompatDelegate.MODE_NIGHT_YES) {
+            return true;
+        }
+        if (mode == AppCompatDelegate.MODE_NIGHT_NO) {
+            return false;
+        }
+        return null;
+    }
+
     // Method to apply dark theme
     public static void applyDarkTheme(Activity activity) {
+        // Setting the mode recreates every activity, even when it doesn't change
+        if (AppCompatDelegate.getDefaultNightMode() == AppCompatDelegate.MODE_NIGHT_YES) {
+            return;
+        }
         AppCompatDelegate.setDefaultNightMode(AppCompatDelegate.MODE_NIGHT_YES);
         Log.d("dark theme", "Theme : Dark"); // Log the theme change
     }
 
     // Method to apply light theme
     public static void applyLightTheme(Activity activity) {
+        if (AppCompatDelegate.getDefaultNightMode() == AppCompatDelegate.MODE_NIGHT_NO) {
+            return;
+        }
         AppCompatDelegate.setDefaultNightMode(AppCompatDelegate.MODE_NIGHT_NO);
         Log.d("light theme", "Theme : Light"); // Log the theme change
     }
@@ -0,0 +1,404 @@
+package com.s22010514.mytodo;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs DatabaseHelper reads on a small background pool and writes on a single thread,
+ * and delivers the results back on the main thread
+ */
+public class TodoRepository {
+
+    private static final String TAG = "TodoRepository";
+
+    // Shared by every repository instance so the number of database threads stays bounded
+    private static final ExecutorService executor = Executors.newFixedThreadPool(2);
+    // Writes run one at a time in the order they were issued, so e.g. an undo can't commit before its delete
+    private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    // Exports and imports run here so a long transfer doesn't hold up list loads on the pool above
+    private static final ExecutorService transferExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final DatabaseHelper dbHelper;
+    private final ContentResolver contentResolver;
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public TodoRepository(Context context) {
+        this.dbHelper = DatabaseHelper.getInstance(context);
+        this.contentResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    // Runs work on the executor and posts its result (or the fallback on error) to the main thread
+    private <T> void execute(Callable<T> work, T fallback, Callback<T> callback) {
+        execute(executor, work, fallback, callback);
+    }
+
+    // Same as execute, on the serial write thread
+    private <T> void write(Callable<T> work, T fallback, Callback<T> callback) {
+        execute(writeExecutor, work, fallback, callback);
+    }
+
+    private <T> void execute(ExecutorService on, Callable<T> work, T fallback, Callback<T> callback) {
+        on.execute(() -> {
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                Log.e(TAG, "Database operation failed", e);
+                result = fallback;
+            }
+            final T finalResult = result;
+            if (callback != null) {
+                mainHandler.post(() -> callback.onResult(finalResult));
+            }
+        });
+    }
+
+    // STATISTICS
+    public void loadUserStatistics(String userId, Callback<UserStatistics> callback) {
+        execute(() -> dbHelper.getUserStatistics(userId), new UserStatistics(0, 0, 0, 0), callback);
+    }
+
+    // NOTES
+    public void loadNotes(String userId, Callback<List<Note>> callback) {
+        execute(() -> readNotes(dbHelper.getNotePreviews(userId)), new ArrayList<>(), callback);
+    }
+
+    // Current state of each changed note, mapped to null when the note no longer exists
+    public void loadChangedNotes(String userId, Collection<Integer> ids, Callback<Map<Integer, Note>> callback) {
+        execute(() -> {
+            Map<Integer, Note> notes = new HashMap<>();
+            for (int id : ids) {
+                List<Note> rows = readNotes(dbHelper.getNotePreviewById(id, userId));
+                notes.put(id, rows.isEmpty() ? null : rows.get(0));
+            }
+            return notes;
+        }, null, callback);
+    }
+
+    // Notes are loaded with a preview of the body, this reads the whole text; null if the note is gone
+    public void loadNoteBody(int id, String userId, Callback<String> callback) {
+        execute(() -> dbHelper.getNoteBody(id, userId), null, callback);
+    }
+
+    public void insertNotes(Collection<Note> notes, String userId, Callback<Integer> callback) {
+        write(() -> dbHelper.insertNotes(notes, userId), 0, callback);
+    }
+
+    public void deleteNotes(Collection<Integer> ids, String userId, Callback<Integer> callback) {
+        write(() -> dbHelper.deleteNotesByIds(ids, userId), 0, callback);
+    }
+
+    // Undo for deleteNote and deleteNotes, the result is the number of notes brought back
+    public void restoreNotes(Collection<Integer> ids, String userId, Callback<Integer> callback) {
+        write(() -> dbHelper.restoreNotesByIds(ids, userId), 0, callback);
+    }
+
+    public SearchPager createNoteSearchPager(String query, String userId) {
+        return new SearchPager(dbHelper, DataChangeBus.TABLE_NOTES, query, userId, DatabaseHelper.SEARCH_PAGE_SIZE);
+    }
+
+    // The next page of ranked search hits, empty when there are no more; calls for one pager must not overlap
+    public void loadNoteSearchHits(SearchPager pager, Callback<List<Note>> callback) {
+        execute(() -> {
+            Cursor cursor = pager.loadNextPage();
+            return cursor != null ? readNotes(cursor) : new ArrayList<Note>();
+        }, new ArrayList<>(), callback);
+    }
+
+    public void getNoteCount(String userId, Callback<Integer> callback) {
+        execute(() -> dbHelper.getNoteCount(userId), 0, callback);
+    }
+
+    public void insertNote(String title, String body, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.insertNote(title, body, userId), false, callback);
+    }
+
+    public void updateNote(int id, String title, String body, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.updateNoteById(id, title, body, userId), false, callback);
+    }
+
+    public void deleteNote(int id, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.deleteNoteById(String.valueOf(id), userId), false, callback);
+    }
+
+    // TASKS
+    public void getTaskCount(String userId, Callback<Integer> callback) {
+        execute(() -> dbHelper.getTaskCount(userId), 0, callback);
+    }
+
+    public TaskPager createTaskPager(String userId) {
+        return new TaskPager(dbHelper, userId, DatabaseHelper.TASK_PAGE_SIZE);
+    }
+
+    // Reloads the first minimumCount tasks from the pager; calls for one pager must not overlap
+    public void reloadTasks(TaskPager pager, int minimumCount, Callback<List<Task>> callback) {
+        execute(() -> pager.reload(minimumCount), new ArrayList<>(), callback);
+    }
+
+    // Loads the next page from the pager; calls for one pager must not overlap
+    public void loadNextTaskPage(TaskPager pager, Callback<List<Task>> callback) {
+        execute(pager::loadNextPage, new ArrayList<>(), callback);
+    }
+
+    public void insertTask(String title, String description, long date, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.insertTask(title, description, date, userId), false, callback);
+    }
+
+    public void updateTask(int id, String title, String description, long date, String userId,
+                           Callback<Boolean> callback) {
+        write(() -> dbHelper.updateTaskById(id, title, description, date, userId), false, callback);
+    }
+
+    public void updateTaskCompletion(int id, boolean isCompleted, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.updateTaskCompletionStatus(id, isCompleted, userId), false, callback);
+    }
+
+    public void deleteTask(int id, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.deleteTaskById(id, userId), false, callback);
+    }
+
+    public void insertTasks(Collection<Task> tasks, String userId, Callback<Integer> callback) {
+        write(() -> dbHelper.insertTasks(tasks, userId), 0, callback);
+    }
+
+    public void updateTasksCompletion(Collection<Integer> ids, boolean isCompleted, String userId,
+                                      Callback<Integer> callback) {
+        write(() -> dbHelper.updateTasksCompletionStatus(ids, isCompleted, userId), 0, callback);
+    }
+
+    public void markAllTasksCompleted(String userId, Callback<Integer> callback) {
+        write(() -> dbHelper.markAllTasksCompleted(userId), 0, callback);
+    }
+
+    public void deleteTasks(Collection<Integer> ids, String userId, Callback<Integer> callback) {
+        write(() -> dbHelper.deleteTasksByIds(ids, userId), 0, callback);
+    }
+
+    public void restoreTasks(Collection<Integer> ids, String userId, Callback<Integer> callback) {
+        write(() -> dbHelper.restoreTasksByIds(ids, userId), 0, callback);
+    }
+
+    public SearchPager createTaskSearchPager(String query, String userId) {
+        return new SearchPager(dbHelper, DataChangeBus.TABLE_TASKS, query, userId, DatabaseHelper.SEARCH_PAGE_SIZE);
+    }
+
+    // The next page of ranked search hits, empty when there are no more; calls for one pager must not overlap
+    public void loadTaskSearchHits(SearchPager pager, Callback<List<Task>> callback) {
+        execute(() -> {
+            Cursor cursor = pager.loadNextPage();
+            return cursor != null ? TaskPager.readTasks(cursor) : new ArrayList<Task>();
+        }, new ArrayList<>(), callback);
+    }
+
+    // Current state of each changed task, mapped to null when the task no longer exists
+    public void loadChangedTasks(String userId, Collection<Integer> ids, Callback<Map<Integer, Task>> callback) {
+        execute(() -> {
+            Map<Integer, Task> tasks = new HashMap<>();
+            for (int id : ids) {
+                List<Task> rows = TaskPager.readTasks(dbHelper.getTaskById(id, userId));
+                tasks.put(id, rows.isEmpty() ? null : rows.get(0));
+            }
+            return tasks;
+        }, null, callback);
+    }
+
+    // LOCATION TASKS
+    public void loadLocationTasks(String userId, Callback<List<LocationTask>> callback) {
+        execute(() -> readLocationTasks(dbHelper.getAllLocationTasks(userId), userId), new ArrayList<>(), callback);
+    }
+
+    // Current state of each changed location task, mapped to null when it no longer exists
+    public void loadChangedLocationTasks(String userId, Collection<Integer> ids,
+                                         Callback<Map<Integer, LocationTask>> callback) {
+        execute(() -> {
+            Map<Integer, LocationTask> locationTasks = new HashMap<>();
+            for (int id : ids) {
+                List<LocationTask> rows = readLocationTasks(dbHelper.getLocationTaskById(id, userId), userId);
+                locationTasks.put(id, rows.isEmpty() ? null : rows.get(0));
+            }
+            return locationTasks;
+        }, null, callback);
+    }
+
+    // Places with notifications enabled, with the triggered state saved by the location service
+    public void loadMonitoredLocationTasks(String userId, Callback<List<GeofenceIndex.Geofence>> callback) {
+        execute(() -> readGeofences(dbHelper.getMonitoredLocationTasks(userId), userId), null, callback);
+    }
+
+    public void setLocationTaskTriggered(int id, boolean triggered, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.setLocationTaskTriggered(id, triggered, userId), false, callback);
+    }
+
+    public void getLocationTaskCount(String userId, Callback<Integer> callback) {
+        execute(() -> dbHelper.getLocationTaskCount(userId), 0, callback);
+    }
+
+    public void insertLocationTask(String title, String description, String locationAddress,
+                                   double latitude, double longitude, int notificationRadius,
+                                   boolean notificationEnabled, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.insertLocationTask(title, description, locationAddress, latitude, longitude,
+                notificationRadius, notificationEnabled, userId), false, callback);
+    }
+
+    public void updateLocationTask(int id, String title, String description, String locationAddress,
+                                   double latitude, double longitude, int notificationRadius,
+                                   boolean notificationEnabled, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.updateLocationTaskById(id, title, description, locationAddress, latitude, longitude,
+                notificationRadius, notificationEnabled, userId), false, callback);
+    }
+
+    public void deleteLocationTask(int id, String userId, Callback<Boolean> callback) {
+        write(() -> dbHelper.deleteLocationTaskById(id, userId), false, callback);
+    }
+
+    public void insertLocationTasks(Collection<LocationTask> locationTasks, String userId,
+                                    Callback<Integer> callback) {
+        write(() -> dbHelper.insertLocationTasks(locationTasks, userId), 0, callback);
+    }
+
+    public void deleteLocationTasks(Collection<Integer> ids, String userId, Callback<Integer> callback) {
+        write(() -> dbHelper.deleteLocationTasksByIds(ids, userId), 0, callback);
+    }
+
+    public void restoreLocationTasks(Collection<Integer> ids, String userId, Callback<Integer> callback) {
+        write(() -> dbHelper.restoreLocationTasksByIds(ids, userId), 0, callback);
+    }
+
+    // EXPORT / IMPORT
+    // Streams all of the user's rows to the document; the result is the row count, or -1 on failure
+    public void exportData(String userId, DataExporter.Format format, Uri uri,
+                           DataExporter.ProgressListener progress, Callback<Integer> callback) {
+        execute(transferExecutor, () -> {
+            OutputStream out = contentResolver.openOutputStream(uri, "wt");
+            if (out == null) {
+                throw new IOException("Can't open " + uri);
+            }
+            return new DataExporter(dbHelper).export(userId, format, out, onMainThread(progress));
+        }, -1, callback);
+    }
+
+    // Adds the rows of an exported document to the user's data; the result is the number added, or -1 on failure
+    public void importData(String userId, Uri uri, DataExporter.ProgressListener progress,
+                           Callback<Integer> callback) {
+        execute(transferExecutor, () -> {
+            InputStream in = contentResolver.openInputStream(uri);
+            if (in == null) {
+                throw new IOException("Can't open " + uri);
+            }
+            return new DataImporter(dbHelper).importData(userId, in, onMainThread(progress));
+        }, -1, callback);
+    }
+
+    private static DataExporter.ProgressListener onMainThread(DataExporter.ProgressListener progress) {
+        if (progress == null) {
+            return null;
+        }
+        return (done, total) -> mainHandler.post(() -> progress.onProgress(done, total));
+    }
+
+    // Reads and closes a notes cursor
+    private static List<Note> readNotes(Cursor cursor) {
+        List<Note> notes = new ArrayList<>();
+        try {
+            int colNoteId = cursor.getColumnIndex(DatabaseHelper.COL_1);
+            int colNoteTitle = cursor.getColumnIndex(DatabaseHelper.COL_2);
+            int colNoteBody = cursor.getColumnIndex(DatabaseHelper.COL_3);
+            // Only present on preview queries
+            int colBodyTruncated = cursor.getColumnIndex("BODY_TRUNCATED");
+
+            while (cursor.moveToNext()) {
+                boolean bodyTruncated = colBodyTruncated != -1 && cursor.getInt(colBodyTruncated) == 1;
+                notes.add(new Note(cursor.getInt(colNoteId), cursor.getString(colNoteTitle),
+                        cursor.getString(colNoteBody), bodyTruncated));
+            }
+        } finally {
+            cursor.close();
+        }
+        return notes;
+    }
+
+    // Reads and closes a location tasks cursor
+    private static List<LocationTask> readLocationTasks(Cursor cursor, String userId) {
+        List<LocationTask> locationTasks = new ArrayList<>();
+        try {
+            int colId = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_1);
+            int colTitle = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_2);
+            int colDescription = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_3);
+            int colLocationAddress = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_4);
+            int colLatitude = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_5);
+            int colLongitude = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_6);
+            int colNotificationRadius = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_7);
+            int colNotificationEnabled = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_8);
+            int colCreatedDate = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_9);
+
+            while (cursor.moveToNext()) {
+                locationTasks.add(new LocationTask(
+                        cursor.getInt(colId),
+                        cursor.getString(colTitle),
+                        cursor.getString(colDescription),
+                        cursor.getString(colLocationAddress),
+                        cursor.getDouble(colLatitude),
+                        cursor.getDouble(colLongitude),
+                        cursor.getInt(colNotificationRadius),
+                        cursor.getInt(colNotificationEnabled) == 1,
+                        cursor.getLong(colCreatedDate),
+                        userId));
+            }
+        } finally {
+            cursor.close();
+        }
+        return locationTasks;
+    }
+
+    // Reads and closes a monitored location tasks cursor, which only has the columns geofencing needs
+    private static List<GeofenceIndex.Geofence> readGeofences(Cursor cursor, String userId) {
+        List<GeofenceIndex.Geofence> geofences = new ArrayList<>();
+        try {
+            int colId = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_1);
+            int colTitle = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_2);
+            int colLatitude = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_5);
+            int colLongitude = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_6);
+            int colNotificationRadius = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_7);
+            int colTriggered = cursor.getColumnIndex(DatabaseHelper.LOC_TASK_COL_11);
+
+            while (cursor.moveToNext()) {
+                LocationTask locationTask = new LocationTask(
+                        cursor.getInt(colId),
+                        cursor.getString(colTitle),
+                        "",
+                        "",
+                        cursor.getDouble(colLatitude),
+                        cursor.getDouble(colLongitude),
+                        cursor.getInt(colNotificationRadius),
+                        true,
+                        0,
+                        userId);
+                geofences.add(new GeofenceIndex.Geofence(locationTask, cursor.getInt(colTriggered) == 1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return geofences;
+    }
+}
@@ -0,0 +1,25 @@
+package com.s22010514.mytodo;
+
+import android.view.View;
+
+import com.google.android.material.snackbar.Snackbar;
+
+/**
+ * The "deleted" message with an UNDO action shown after a soft delete, in place of the old
+ * "This action cannot be undone" confirmation dialogs.
+ */
+public final class UndoSnackbar {
+
+    private UndoSnackbar() {
+    }
+
+    // anchor has to be attached to the window, e.g. the list the rows were removed from
+    public static void show(View anchor, String message, Runnable undo) {
+        if (anchor == null || !anchor.isAttachedToWindow()) {
+            return;
+        }
+        Snackbar.make(anchor, message, Snackbar.LENGTH_LONG)
+                .setAction("UNDO", v -> undo.run())
+                .show();
+    }
+}
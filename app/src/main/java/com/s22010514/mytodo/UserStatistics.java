@@ -0,0 +1,22 @@
+package com.s22010514.mytodo;
+
+public class UserStatistics {
+    private final int taskCount;
+    private final int completedTaskCount;
+    private final int noteCount;
+    private final int placeCount;
+
+    public UserStatistics(int taskCount, int completedTaskCount, int noteCount, int placeCount) {
+        this.taskCount = taskCount;
+        this.completedTaskCount = completedTaskCount;
+        this.noteCount = noteCount;
+        this.placeCount = placeCount;
+    }
+
+    // Getters
+    public int getTaskCount() { return taskCount; }
+    public int getCompletedTaskCount() { return completedTaskCount; }
+    public int getPendingTaskCount() { return taskCount - completedTaskCount; }
+    public int getNoteCount() { return noteCount; }
+    public int getPlaceCount() { return placeCount; }
+}
@@ -6,6 +6,9 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 public class sensorManagerHelper implements SensorEventListener {
@@ -17,6 +20,11 @@ public class sensorManagerHelper implements SensorEventListener {
     private Sensor lightSensor;
     // Reference to the activity
     private Activity activity;
+    // Smooths the readings so the theme only changes when the lighting really does
+    private final AmbientLightFilter lightFilter = new AmbientLightFilter(ThemeManager.getAppliedDarkTheme());
+    // The light sensor only reports changes, so a steady new level is re-checked without waiting for an event
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable recheck = () -> applyDecision(lightFilter.check(SystemClock.elapsedRealtime()));
 
     // Private constructor to prevent direct instantiation
     private sensorManagerHelper(Activity activity) {
@@ -36,6 +44,8 @@ public class sensorManagerHelper implements SensorEventListener {
 
     // Method to register the sensor listener
     public void registerListener() {
+        // Readings from before the pause say nothing about the lighting now
+        lightFilter.reset(ThemeManager.getAppliedDarkTheme());
         sensorManager.registerListener(this, lightSensor, SensorManager.SENSOR_DELAY_NORMAL);
         Log.d("registerSensor", "Listener registered for light sensor."); // Log registration
     }
@@ -43,6 +53,7 @@ public class sensorManagerHelper implements SensorEventListener {
     // Method to unregister the sensor listener
     public void unregisterListener() {
         sensorManager.unregisterListener(this);
+        handler.removeCallbacks(recheck);
     }
 
     // Method called when sensor values change
@@ -50,16 +61,26 @@ public class sensorManagerHelper implements SensorEventListener {
     public void onSensorChanged(SensorEvent event) {
         if (event.sensor.getType() == Sensor.TYPE_LIGHT) {
             float lightLevel = event.values[0];
-            Log.d("LightLevel", "Light Level : " + lightLevel);
-            if (lightLevel < 20) {
-                // Apply dark theme if light level is low
-                ThemeManager.applyDarkTheme(activity);
-                Log.d("applied", "Theme : dark");
-            } else {
-                // Apply light theme if light level is high
-                ThemeManager.applyLightTheme(activity);
-                Log.d("applied", "Theme : Light");
-            }
+            // Same clock as the re-check, so readings and re-checks line up
+            applyDecision(lightFilter.onReading(lightLevel, SystemClock.elapsedRealtime()));
+        }
+    }
+
+    private void applyDecision(int decision) {
+        if (decision == AmbientLightFilter.SWITCH_TO_DARK) {
+            // Apply dark theme once it has stayed dark for a while
+            ThemeManager.applyDarkTheme(activity);
+            Log.d("applied", "Theme : dark");
+        } else if (decision == AmbientLightFilter.SWITCH_TO_LIGHT) {
+            // Apply light theme once it has stayed bright for a while
+            ThemeManager.applyLightTheme(activity);
+            Log.d("applied", "Theme : Light");
+        }
+
+        handler.removeCallbacks(recheck);
+        long delay = lightFilter.getRecheckDelay(SystemClock.elapsedRealtime());
+        if (delay >= 0) {
+            handler.postDelayed(recheck, delay);
         }
     }
 
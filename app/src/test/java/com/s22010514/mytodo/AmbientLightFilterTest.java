@@ -0,0 +1,52 @@
+package com.s22010514.mytodo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds AmbientLightFilter the sparse readings an on-change light sensor delivers.
+ */
+public class AmbientLightFilterTest {
+
+    @Test
+    public void steadyDarkLevel_switchesWithoutFurtherReadings() {
+        AmbientLightFilter filter = new AmbientLightFilter(false);
+        assertEquals(AmbientLightFilter.NO_CHANGE, filter.onReading(200f, 0));
+        // Walking into a dark room: one reading, then the sensor goes quiet
+        assertEquals(AmbientLightFilter.NO_CHANGE, filter.onReading(0f, 10000));
+
+        long now = 10000;
+        int decision = AmbientLightFilter.NO_CHANGE;
+        for (int i = 0; i < 5 && decision == AmbientLightFilter.NO_CHANGE; i++) {
+            long delay = filter.getRecheckDelay(now);
+            assertTrue("A re-check should be scheduled", delay >= 0);
+            now += delay;
+            decision = filter.check(now);
+        }
+        assertEquals(AmbientLightFilter.SWITCH_TO_DARK, decision);
+        assertEquals(-1, filter.getRecheckDelay(now));
+    }
+
+    @Test
+    public void averageIsWeightedByTime_notByReadingCount() {
+        AmbientLightFilter filter = new AmbientLightFilter(false);
+        filter.onReading(200f, 0);
+        // Many dark readings in a few milliseconds don't outweigh seconds of bright light
+        for (int i = 1; i <= 20; i++) {
+            filter.onReading(0f, 5000 + i);
+        }
+        assertEquals(AmbientLightFilter.NO_CHANGE, filter.check(5030));
+        assertTrue(filter.getRecheckDelay(5030) > 0);
+    }
+
+    @Test
+    public void briefDarkness_doesNotSwitch() {
+        AmbientLightFilter filter = new AmbientLightFilter(false);
+        filter.onReading(200f, 0);
+        filter.onReading(0f, 5000);
+        filter.onReading(200f, 6000);
+        assertEquals(-1, filter.getRecheckDelay(6000));
+        assertEquals(AmbientLightFilter.NO_CHANGE, filter.check(20000));
+    }
+}
@@ -0,0 +1,55 @@
+package com.s22010514.mytodo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how bulk writes are recorded in the change log.
+ */
+public class DataChangeBusTest {
+
+    @Test
+    public void smallBulkWrite_keepsRowChanges_andNotifiesOnce() {
+        DataChangeBus bus = new DataChangeBus();
+        AtomicInteger notified = new AtomicInteger();
+        bus.addListener((table, type) -> notified.incrementAndGet());
+
+        bus.publishAll(DataChangeBus.TABLE_TASKS, DataChangeBus.CHANGE_INSERT, Arrays.asList(4, 5, 6));
+
+        assertEquals(1, notified.get());
+        assertEquals(3, bus.getVersion(DataChangeBus.TABLE_TASKS));
+        List<DataChangeBus.Change> changes = bus.getChangesSince(DataChangeBus.TABLE_TASKS, 0);
+        assertNotNull(changes);
+        assertEquals(Arrays.asList(4, 5, 6), new ArrayList<>(DataChangeBus.changedRowIds(changes)));
+    }
+
+    @Test
+    public void bulkWriteLargerThanTheLog_isOneUnknownRowChange() {
+        DataChangeBus bus = new DataChangeBus();
+        AtomicInteger notified = new AtomicInteger();
+        bus.addListener((table, type) -> notified.incrementAndGet());
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= 500; i++) {
+            ids.add(i);
+        }
+
+        bus.publishAll(DataChangeBus.TABLE_NOTES, DataChangeBus.CHANGE_INSERT, ids);
+
+        assertEquals(1, notified.get());
+        assertEquals(1, bus.getVersion(DataChangeBus.TABLE_NOTES));
+        assertNull(bus.getChangesSince(DataChangeBus.TABLE_NOTES, 0));
+    }
+
+    @Test
+    public void emptyBulkWrite_changesNothing() {
+        DataChangeBus bus = new DataChangeBus();
+        bus.publishAll(DataChangeBus.TABLE_NOTES, DataChangeBus.CHANGE_DELETE, new ArrayList<>());
+        assertEquals(0, bus.getVersion(DataChangeBus.TABLE_NOTES));
+    }
+}
@@ -0,0 +1,228 @@
+package com.s22010514.mytodo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs MailDispatcher against a stub HTTP server on localhost.
+ */
+public class MailDispatcherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private URL endpoint;
+    private File queueDir;
+
+    // Status codes the stub answers with in order, 200 once they run out
+    private final Deque<Integer> responses = new ArrayDeque<>();
+    private final List<String> receivedBodies = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long responseDelayMs = 0;
+
+    private final List<MailDispatcher> dispatchers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        queueDir = temporaryFolder.newFolder("email_queue");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/send", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        endpoint = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/send");
+    }
+
+    @After
+    public void tearDown() {
+        for (MailDispatcher dispatcher : dispatchers) {
+            dispatcher.shutdown();
+        }
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            receivedBodies.add(readBody(exchange.getRequestBody()));
+            if (responseDelayMs > 0) {
+                Thread.sleep(responseDelayMs);
+            }
+            Integer status;
+            synchronized (responses) {
+                status = responses.poll();
+            }
+            byte[] reply = (status == null || status == 200 ? "OK" : "error").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status == null ? 200 : status, reply.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(reply);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private MailDispatcher newDispatcher(int maxInFlight, long maxAgeMs) {
+        MailDispatcher dispatcher = new MailDispatcher(queueDir, endpoint, maxInFlight, 20, 100, maxAgeMs, Runnable::run);
+        dispatchers.add(dispatcher);
+        return dispatcher;
+    }
+
+    @Test
+    public void delivers_andEmptiesQueue() throws InterruptedException {
+        Result result = new Result();
+        newDispatcher(2, 60000).enqueue("{\"email\":\"a@example.com\"}", result);
+
+        assertTrue(result.await());
+        assertNull(result.error.get());
+        assertEquals(Collections.singletonList("{\"email\":\"a@example.com\"}"), receivedBodies);
+        assertEquals(0, queueDir.list().length);
+    }
+
+    @Test
+    public void retries_serverErrorsAndRateLimits() throws InterruptedException {
+        responses.add(503);
+        responses.add(429);
+        Result result = new Result();
+        newDispatcher(2, 60000).enqueue("{}", result);
+
+        assertTrue(result.await());
+        assertNull(result.error.get());
+        assertEquals(3, receivedBodies.size());
+    }
+
+    @Test
+    public void doesNotRetry_rejectedRequest() throws InterruptedException {
+        responses.add(400);
+        Result result = new Result();
+        newDispatcher(2, 60000).enqueue("{}", result);
+
+        assertTrue(result.await());
+        assertNotNull(result.error.get());
+        assertEquals(1, receivedBodies.size());
+        assertEquals(0, queueDir.list().length);
+    }
+
+    @Test
+    public void givesUp_afterMaxAge() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            responses.add(500);
+        }
+        Result result = new Result();
+        newDispatcher(2, 200).enqueue("{}", result);
+
+        assertTrue(result.await());
+        assertNotNull(result.error.get());
+        assertTrue(receivedBodies.size() > 1);
+        assertEquals(0, queueDir.list().length);
+    }
+
+    @Test
+    public void resumesQueue_afterRestart() throws InterruptedException {
+        // The first dispatcher keeps failing, as if offline, and is shut down with the request still queued
+        for (int i = 0; i < 100; i++) {
+            responses.add(503);
+        }
+        MailDispatcher first = newDispatcher(1, 60000);
+        first.enqueue("{\"queued\":true}", null);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (receivedBodies.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        first.shutdown();
+        first.awaitTermination();
+        assertEquals(1, first.getPendingCount());
+
+        synchronized (responses) {
+            responses.clear();
+        }
+        receivedBodies.clear();
+        MailDispatcher second = newDispatcher(1, 60000);
+        second.resumePending();
+
+        deadline = System.currentTimeMillis() + 5000;
+        while (second.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, second.getPendingCount());
+        assertTrue(receivedBodies.contains("{\"queued\":true}"));
+    }
+
+    @Test
+    public void capsRequestsInFlight() throws InterruptedException {
+        responseDelayMs = 100;
+        MailDispatcher dispatcher = newDispatcher(2, 60000);
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Result result = new Result();
+            results.add(result);
+            dispatcher.enqueue("{\"n\":" + i + "}", result);
+        }
+        for (Result result : results) {
+            assertTrue(result.await());
+            assertNull(result.error.get());
+        }
+        assertEquals(6, receivedBodies.size());
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        StringBuilder body = new StringBuilder();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+        }
+        return body.toString();
+    }
+
+    private static class Result implements MailDispatcher.Listener {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<String> error = new AtomicReference<>();
+
+        @Override
+        public void onDelivered() {
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(String message) {
+            error.set(message);
+            done.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.s22010514.mytodo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks where a task whose sort key changed goes back into a loaded window.
+ */
+public class TaskPagerTest {
+
+    private static Task task(int id, long date, boolean completed) {
+        return new Task(id, "Task " + id, null, date, completed);
+    }
+
+    private static List<Task> window() {
+        // Open tasks newest first, then completed ones
+        return new ArrayList<>(Arrays.asList(
+                task(5, 3000, false),
+                task(4, 2000, false),
+                task(3, 2000, false),
+                task(2, 3000, true),
+                task(1, 1000, true)));
+    }
+
+    @Test
+    public void insertionIndex_placesTaskInsideItsGroup() {
+        assertEquals(0, TaskPager.insertionIndex(window(), task(9, 4000, false), true));
+        assertEquals(1, TaskPager.insertionIndex(window(), task(6, 2000, false), true));
+        assertEquals(3, TaskPager.insertionIndex(window(), task(2, 2000, false), true));
+        assertEquals(4, TaskPager.insertionIndex(window(), task(7, 2000, true), true));
+    }
+
+    @Test
+    public void insertionIndex_dropsTaskPastTheWindowWhileMorePagesRemain() {
+        assertEquals(-1, TaskPager.insertionIndex(window(), task(8, 500, true), true));
+        assertEquals(5, TaskPager.insertionIndex(window(), task(8, 500, true), false));
+    }
+
+    @Test
+    public void listOrder_putsOpenTasksFirst() {
+        assertTrue(TaskPager.LIST_ORDER.compare(task(1, 0, false), task(2, 9000, true)) < 0);
+        assertTrue(TaskPager.LIST_ORDER.compare(task(1, 2000, false), task(2, 2000, false)) > 0);
+    }
+}
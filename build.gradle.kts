@@ -6,4 +6,6 @@ buildscript {
 // Top-level build file where you can add configuration options common to all sub-projects/modules.
 plugins {
     id("com.android.application") version "8.2.2" apply false
+    id("com.android.test") version "8.2.2" apply false
+    id("androidx.baselineprofile") version "1.2.3" apply false
 }
\ No newline at end of file
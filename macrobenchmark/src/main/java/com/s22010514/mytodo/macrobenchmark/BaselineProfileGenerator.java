@@ -0,0 +1,29 @@
+package com.s22010514.mytodo.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import kotlin.Unit;
+
+/**
+ * Records the classes and methods used while starting the app and opening HomePage and the
+ * task list. Run with ./gradlew :app:generateBaselineProfile on an API 33+ device or a rooted
+ * API 28+ one; the plugin copies the result into app/src/release/generated/baselineProfiles.
+ */
+public class BaselineProfileGenerator {
+
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void generate() {
+        baselineProfileRule.collect(Journeys.PACKAGE_NAME, scope -> {
+            Journeys.startMainActivity(scope);
+            Journeys.continueToHomePage(scope);
+            Journeys.openTaskList(scope);
+            return Unit.INSTANCE;
+        });
+    }
+}
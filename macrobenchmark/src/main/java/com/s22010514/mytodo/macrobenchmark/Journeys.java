@@ -0,0 +1,64 @@
+package com.s22010514.mytodo.macrobenchmark;
+
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.BySelector;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+/**
+ * User flows shared by the startup benchmarks and the baseline profile generator.
+ * The flows past MainActivity need a signed-in account on the device, so sign in once by hand first.
+ */
+final class Journeys {
+
+    static final String PACKAGE_NAME = "com.s22010514.mytodo";
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private Journeys() {
+    }
+
+    // Cold or warm launch of the launcher activity, waiting for its first frame
+    static void startMainActivity(MacrobenchmarkScope scope) {
+        scope.pressHome();
+        scope.startActivityAndWait();
+    }
+
+    // MainActivity's "Continue to App" button into HomePage
+    static void continueToHomePage(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        device.wait(Until.hasObject(byId("button")), TIMEOUT_MS);
+        UiObject2 continueButton = device.findObject(byId("button"));
+        if (continueButton == null) {
+            throw new IllegalStateException("MainActivity didn't show its start button");
+        }
+        continueButton.click();
+        if (!device.wait(Until.hasObject(byId("addTaskCard")), TIMEOUT_MS)) {
+            throw new IllegalStateException("HomePage didn't open; is an account signed in on the device?");
+        }
+    }
+
+    // Opens the task list from HomePage and scrolls it
+    static void openTaskList(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        device.findObject(byId("taskListCard")).click();
+        device.wait(Until.hasObject(byId("taskRecyclerView")), TIMEOUT_MS);
+        UiObject2 list = device.findObject(byId("taskRecyclerView"));
+        if (list != null) {
+            // Keep the gesture clear of the system navigation area
+            list.setGestureMargin(device.getDisplayWidth() / 5);
+            list.fling(Direction.DOWN);
+            device.waitForIdle();
+            list.fling(Direction.UP);
+        }
+        device.pressBack();
+        device.wait(Until.hasObject(byId("addTaskCard")), TIMEOUT_MS);
+    }
+
+    private static BySelector byId(String id) {
+        return By.res(PACKAGE_NAME, id);
+    }
+}
@@ -0,0 +1,92 @@
+package com.s22010514.mytodo.macrobenchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Cold and warm start of MainActivity, and the cold path on into HomePage, each measured
+ * without any AOT compilation and with the baseline profile, so the profile's gain shows up
+ * side by side. Run against the benchmarkRelease build with
+ * ./gradlew :macrobenchmark:connectedBenchmarkReleaseAndroidTest
+ */
+@RunWith(Parameterized.class)
+public class StartupBenchmark {
+
+    private static final int ITERATIONS = 10;
+
+    @Parameterized.Parameters(name = "compilation={0}")
+    public static Collection<Object[]> compilationModes() {
+        return Arrays.asList(new Object[][]{
+                {new CompilationMode.None()},
+                {new CompilationMode.Partial(BaselineProfileMode.Require)}
+        });
+    }
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    private final CompilationMode compilationMode;
+
+    public StartupBenchmark(CompilationMode compilationMode) {
+        this.compilationMode = compilationMode;
+    }
+
+    @Test
+    public void coldStart() {
+        benchmarkRule.measureRepeated(
+                Journeys.PACKAGE_NAME,
+                Collections.singletonList(new StartupTimingMetric()),
+                compilationMode,
+                StartupMode.COLD,
+                ITERATIONS,
+                scope -> {
+                    Journeys.startMainActivity(scope);
+                    return Unit.INSTANCE;
+                });
+    }
+
+    @Test
+    public void warmStart() {
+        benchmarkRule.measureRepeated(
+                Journeys.PACKAGE_NAME,
+                Collections.singletonList(new StartupTimingMetric()),
+                compilationMode,
+                StartupMode.WARM,
+                ITERATIONS,
+                scope -> {
+                    Journeys.startMainActivity(scope);
+                    return Unit.INSTANCE;
+                });
+    }
+
+    // Launch plus the hop into HomePage; frame timing covers HomePage's first frames and its notification setup
+    @Test
+    public void coldStartIntoHomePage() {
+        benchmarkRule.measureRepeated(
+                Journeys.PACKAGE_NAME,
+                Arrays.asList(new StartupTimingMetric(), new FrameTimingMetric()),
+                compilationMode,
+                StartupMode.COLD,
+                ITERATIONS,
+                scope -> {
+                    Journeys.startMainActivity(scope);
+                    Journeys.continueToHomePage(scope);
+                    return Unit.INSTANCE;
+                });
+    }
+}
@@ -15,4 +15,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "MyToDo"
 include(":app")
+include(":macrobenchmark")
  
\ No newline at end of file